@@ -1,9 +1,9 @@
 package com.satori.rtm;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.satori.rtm.connection.Connection;
 import com.satori.rtm.utils.AbstractStateMachine;
 import com.satori.rtm.utils.State;
-import java.util.concurrent.Future;
 
 
 abstract class AbstractSubscription
@@ -17,7 +17,7 @@ abstract class AbstractSubscription
 
   private final RtmService mRtmService;
   Mode mMode;
-  private Future<?> mRequest = null;
+  private ListenableFuture<?> mRequest = null;
 
   AbstractSubscription(RtmService rtmService) {
     this.mRtmService = rtmService;
@@ -25,9 +25,9 @@ abstract class AbstractSubscription
     this.mState = UNSUBSCRIBED;
   }
 
-  protected abstract Future<?> doSubscribeRequest(Connection connection);
+  protected abstract ListenableFuture<?> doSubscribeRequest(Connection connection);
 
-  protected abstract Future<?> doUnsubscribeRequest(Connection connection);
+  protected abstract ListenableFuture<?> doUnsubscribeRequest(Connection connection);
 
   protected abstract void onEnterFailed();
 
@@ -55,6 +55,10 @@ abstract class AbstractSubscription
     return this.mRtmService;
   }
 
+  ListenableFuture<?> getRequest() {
+    return this.mRequest;
+  }
+
   public void unsubscribe() {
     mMode = Mode.UNLINKED;
     getState().checkModeTransition(this);
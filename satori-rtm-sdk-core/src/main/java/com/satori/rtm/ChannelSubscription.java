@@ -18,7 +18,6 @@ import com.satori.rtm.model.UnsubscribeRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Future;
 
 /*
  * Manages the states and transitions for a channel subscription, using a finite state machine.
@@ -29,6 +28,8 @@ class ChannelSubscription extends AbstractSubscription {
 
   private SubscriptionConfig mSubscriptionConfig;
   private SubscriptionConfig mNextSubscriptionConfig;
+  private SubscriptionListener mUserListener;
+  private SubscriptionListener mNextUserListener;
 
   private SubscribeRequest mSubscribeRequest;
   private SubscribeReply mSubscribeReply;
@@ -42,6 +43,7 @@ class ChannelSubscription extends AbstractSubscription {
     super(rtmService);
     this.mSubscriptionConfig = subscriptionConfig;
     this.mSubscriptionId = subscriptionId;
+    this.mUserListener = createUserListener(subscriptionConfig);
   }
 
   void updateSubscriptionConfig(SubscriptionConfig subscriptionConfig) {
@@ -49,11 +51,12 @@ class ChannelSubscription extends AbstractSubscription {
       throw new RuntimeException("Subscribe while not unsubscribed");
     }
     if (null != mNextSubscriptionConfig) {
-      mNextSubscriptionConfig.getUserListener().onDeleted();
+      mNextUserListener.onDeleted();
     }
     mNextSubscriptionConfig = subscriptionConfig;
+    mNextUserListener = createUserListener(subscriptionConfig);
     mMode = Mode.CYCLE;
-    this.mNextSubscriptionConfig.getUserListener().onCreated();
+    mNextUserListener.onCreated();
     getState().checkModeTransition(this);
   }
 
@@ -64,7 +67,7 @@ class ChannelSubscription extends AbstractSubscription {
 
   @Override
   public void enterStartState() {
-    mSubscriptionConfig.getUserListener().onCreated();
+    getUserListener().onCreated();
     super.enterStartState();
   }
 
@@ -78,7 +81,11 @@ class ChannelSubscription extends AbstractSubscription {
   @Override
   public void dispose() {
     getRtmService().getPubSub().deleteSubscriptionFromRegistry(getSubscriptionId());
-    mSubscriptionConfig.getUserListener().onDeleted();
+    getUserListener().onDeleted();
+  }
+
+  boolean isTrackingPosition() {
+    return mSubscriptionConfig.isTrackingPosition();
   }
 
   private String getSubscriptionId() {
@@ -86,13 +93,19 @@ class ChannelSubscription extends AbstractSubscription {
   }
 
   private SubscriptionListener getUserListener() {
-    return mSubscriptionConfig.getUserListener();
+    return mUserListener;
+  }
+
+  private SubscriptionListener createUserListener(SubscriptionConfig config) {
+    PubSub pubSub = getRtmService().getPubSub();
+    return pubSub.dispatchListener(getSubscriptionId(), config);
   }
 
 
   void onChannelInfo(final Pdu<SubscriptionInfo> pdu) {
     LOG.info("Received rtm/subscription/info PDU: {}", pdu);
     SubscriptionInfo subscriptionInfo = pdu.getBody();
+    mSubscriptionConfig.onInfo(subscriptionInfo);
     String next = subscriptionInfo.getPosition();
     if (!Strings.isNullOrEmpty(next)) {
       mSubscriptionConfig.onPosition(next);
@@ -103,6 +116,7 @@ class ChannelSubscription extends AbstractSubscription {
   void onSubscriptionError(final Pdu<SubscriptionError> pdu) {
     LOG.warn("Received rtm/subscription/error PDU: {}", pdu);
     SubscriptionError subscriptionError = pdu.getBody();
+    mSubscriptionConfig.onSubscriptionError(subscriptionError);
     getUserListener().onSubscriptionError(subscriptionError);
     if (mSubscriptionConfig.onError(subscriptionError)) {
       getState().transition(this, FAILED);
@@ -113,14 +127,20 @@ class ChannelSubscription extends AbstractSubscription {
 
   protected void onSubscriptionData(final Pdu<SubscriptionData> pdu) {
     SubscriptionData subscriptionData = pdu.getBody();
+    if (mSubscriptionConfig.isDuplicate(subscriptionData)) {
+      LOG.debug("Suppressed repeated subscription data at position {}",
+          subscriptionData.getPosition());
+      return;
+    }
     mSubscriptionConfig.onPosition(subscriptionData.getPosition());
     getUserListener().onSubscriptionData(subscriptionData);
   }
 
   @Override
-  protected Future<?> doSubscribeRequest(Connection connection) {
+  protected ListenableFuture<?> doSubscribeRequest(Connection connection) {
     String subscriptionId = getSubscriptionId();
     mSubscribeRequest = mSubscriptionConfig.createSubscribeRequest(subscriptionId);
+    mSubscriptionConfig.onSubscribe();
 
     ListenableFuture<Pdu<SubscribeReply>> request =
         connection.send("rtm/subscribe", mSubscribeRequest, SubscribeReply.class);
@@ -142,6 +162,7 @@ class ChannelSubscription extends AbstractSubscription {
         if (SUBSCRIBING == getState()) {
           Pdu<SubscriptionError> pdu = extractSubscriptionErrorPdu(t);
           SubscriptionError subscriptionError = (null != pdu) ? pdu.getBody() : null;
+          mSubscriptionConfig.onSubscriptionError(subscriptionError);
           if (null != pdu) {
             LOG.warn("Received negative response while handling rtm/subscribe request: {}", pdu);
             getUserListener().onSubscriptionError(subscriptionError);
@@ -160,7 +181,7 @@ class ChannelSubscription extends AbstractSubscription {
   }
 
   @Override
-  protected Future<?> doUnsubscribeRequest(Connection connection) {
+  protected ListenableFuture<?> doUnsubscribeRequest(Connection connection) {
     String subscriptionId = getSubscriptionId();
 
     final UnsubscribeRequest mUnsubscribeRequest = new UnsubscribeRequest(subscriptionId);
@@ -202,11 +223,13 @@ class ChannelSubscription extends AbstractSubscription {
   @Override
   protected void onEnterUnsubscribed() {
     if (mNextSubscriptionConfig != null && Mode.LINKED == mMode) {
-      mSubscriptionConfig.getUserListener().onDeleted();
+      mUserListener.onDeleted();
       mSubscriptionConfig = mNextSubscriptionConfig;
-      mSubscriptionConfig.getUserListener().onCreated();
+      mUserListener = mNextUserListener;
+      mUserListener.onCreated();
     }
     mNextSubscriptionConfig = null;
+    mNextUserListener = null;
 
     getUserListener().onEnterUnsubscribed(mUnsubscribeRequest, mUnsubscribeReply);
   }
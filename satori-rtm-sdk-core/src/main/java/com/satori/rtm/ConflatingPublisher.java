@@ -0,0 +1,179 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes only the latest message of each channel at a fixed rate.
+ * <p>
+ * Use {@code ConflatingPublisher} for channels that carry a state, where subscribers only need
+ * the latest value. Messages passed to {@link #publish(String, Object)} are kept in memory, one
+ * per channel, and a newer message replaces an older one that isn't published yet. The kept
+ * messages are published with {@link ExtendedRtmClient#publishBatch(java.util.Collection, Ack)
+ * ExtendedRtmClient.publishBatch()} every flush interval, or as soon as messages of {@code changeBudget}
+ * channels are waiting. So a message is never delayed by more than the flush interval.
+ * <p>
+ * For example:
+ * <pre>
+ * ConflatingPublisher publisher = new ConflatingPublisher(client, scheduler, 50, 1000, Ack.NO);
+ * publisher.start();
+ * publisher.publish("prices/AAPL", price);
+ * </pre>
+ */
+public class ConflatingPublisher {
+  private final static Logger LOG = LoggerFactory.getLogger(ConflatingPublisher.class);
+
+  private final ExtendedRtmClient mClient;
+  private final ScheduledExecutorService mScheduler;
+  private final long mFlushIntervalMillis;
+  private final int mChangeBudget;
+  private final Ack mAck;
+  private final Object mLock = new Object();
+  private final Object mFlushLock = new Object();
+  private final AtomicLong mConflatedCount = new AtomicLong();
+  private final AtomicLong mPublishedCount = new AtomicLong();
+  // guarded by mLock
+  private Map<String, Object> mLatest = new LinkedHashMap<String, Object>();
+  private ScheduledFuture<?> mFlushTask;
+
+  /**
+   * Creates a publisher that conflates messages per channel.
+   *
+   * @param client              RTM client to publish the messages
+   * @param scheduler           scheduler that runs periodic flushes
+   * @param flushIntervalMillis interval between flushes in milliseconds
+   * @param changeBudget        number of changed channels that triggers an immediate flush
+   * @param ack                 determines if RTM should acknowledge the publish operations
+   */
+  public ConflatingPublisher(ExtendedRtmClient client, ScheduledExecutorService scheduler,
+                             long flushIntervalMillis, int changeBudget, Ack ack) {
+    checkArgument(flushIntervalMillis > 0, "Flush interval must be positive: %s",
+        flushIntervalMillis);
+    checkArgument(changeBudget > 0, "Change budget must be positive: %s", changeBudget);
+    this.mClient = checkNotNull(client);
+    this.mScheduler = checkNotNull(scheduler);
+    this.mFlushIntervalMillis = flushIntervalMillis;
+    this.mChangeBudget = changeBudget;
+    this.mAck = checkNotNull(ack);
+  }
+
+  /**
+   * Starts periodic flushes.
+   */
+  public void start() {
+    synchronized (mLock) {
+      if (null != mFlushTask) {
+        return;
+      }
+      mFlushTask = mScheduler.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flush();
+          } catch (RuntimeException ex) {
+            LOG.error("Unable to flush conflated messages", ex);
+          }
+        }
+      }, mFlushIntervalMillis, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops periodic flushes and publishes the messages that are still waiting.
+   *
+   * @return result of the last flush, see {@link #flush()}
+   */
+  public ListenableFuture<PublishBatchResult> stop() {
+    synchronized (mLock) {
+      if (null != mFlushTask) {
+        mFlushTask.cancel(false);
+        mFlushTask = null;
+      }
+    }
+    return flush();
+  }
+
+  /**
+   * Stores the message as the latest message of the channel.
+   * <p>
+   * If an older message of the channel isn't published yet, it's replaced and never published.
+   *
+   * @param channel name of the channel
+   * @param message message to publish
+   * @param <T>     type of the {@code message} parameter
+   */
+  public <T> void publish(String channel, T message) {
+    checkNotNull(channel);
+    boolean budgetReached;
+    synchronized (mLock) {
+      if (null != mLatest.put(channel, message)) {
+        mConflatedCount.incrementAndGet();
+      }
+      budgetReached = mLatest.size() >= mChangeBudget;
+    }
+    if (budgetReached) {
+      flush();
+    }
+  }
+
+  /**
+   * Publishes the latest messages of all changed channels right away.
+   *
+   * @return replies of the published messages, in the order in which the channels changed
+   */
+  public ListenableFuture<PublishBatchResult> flush() {
+    // flushes are serialized, so an older message is never published after a newer one
+    synchronized (mFlushLock) {
+      Map<String, Object> latest;
+      synchronized (mLock) {
+        if (mLatest.isEmpty()) {
+          return Futures.immediateFuture(new PublishBatchResult(
+              Collections.<PublishReply>emptyList(), Collections.<Integer, Throwable>emptyMap()));
+        }
+        latest = mLatest;
+        mLatest = new LinkedHashMap<String, Object>();
+      }
+      List<PublishRequest<Object>> requests =
+          new ArrayList<PublishRequest<Object>>(latest.size());
+      for (Map.Entry<String, Object> entry : latest.entrySet()) {
+        requests.add(new PublishRequest<Object>(entry.getKey(), entry.getValue()));
+      }
+      mPublishedCount.addAndGet(requests.size());
+      return mClient.publishBatch(requests, mAck);
+    }
+  }
+
+  /**
+   * Returns the number of messages that were replaced by a newer message before publishing.
+   *
+   * @return number of conflated messages
+   */
+  public long getConflatedCount() {
+    return mConflatedCount.get();
+  }
+
+  /**
+   * Returns the number of messages that were passed to the RTM client for publishing.
+   *
+   * @return number of published messages
+   */
+  public long getPublishedCount() {
+    return mPublishedCount.get();
+  }
+}
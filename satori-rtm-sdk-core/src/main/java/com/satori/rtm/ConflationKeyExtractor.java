@@ -0,0 +1,22 @@
+package com.satori.rtm;
+
+import com.satori.rtm.model.SubscriptionData;
+
+/**
+ * Extracts the key by which subscription data is conflated.
+ * <p>
+ * When a subscription falls behind, only the latest subscription data is kept for each key.
+ *
+ * @see SubscriptionConfig#setConflation(ConflationKeyExtractor)
+ */
+public interface ConflationKeyExtractor {
+  /**
+   * Returns the conflation key of the subscription data.
+   * <p>
+   * The method is called on the SDK dispatcher thread, so it should be fast.
+   *
+   * @param data subscription data
+   * @return conflation key, or {@code null} to never conflate this subscription data
+   */
+  String getKey(SubscriptionData data);
+}
@@ -0,0 +1,128 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscriptionData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes the messages of a subscription to handlers by a key extracted from each message.
+ * <p>
+ * Use {@code ContentRouter} as the listener of a wide channel instead of dispatching on a
+ * message field inside {@link SubscriptionListener#onSubscriptionData(SubscriptionData)}.
+ * The handlers are kept in a hash table, so finding the handler of a message takes the same time
+ * for any number of routes. Routes can be added and removed at any time from any thread.
+ * <p>
+ * Messages without a key or without a route for their key go to the default handler, if it's
+ * set. Exceptions thrown by a handler are logged and don't prevent other messages from being
+ * routed.
+ * <p>
+ * For example:
+ * <pre>
+ * ContentRouter router = new ContentRouter(new FieldKeyExtractor("type"));
+ * router.addRoute("trade", tradeHandler);
+ * router.addRoute("quote", quoteHandler);
+ * client.createSubscription("market", SubscriptionMode.SIMPLE, router);
+ * </pre>
+ */
+public class ContentRouter extends SubscriptionAdapter {
+  private final static Logger LOG = LoggerFactory.getLogger(ContentRouter.class);
+
+  private final RoutingKeyExtractor mKeyExtractor;
+  private final Map<String, MessageHandler> mRoutes =
+      new ConcurrentHashMap<String, MessageHandler>();
+  private final AtomicLong mUnroutedCount = new AtomicLong();
+  private volatile MessageHandler mDefaultHandler;
+
+  /**
+   * Creates a router that routes messages by the keys of the extractor.
+   *
+   * @param keyExtractor extractor of routing keys
+   */
+  public ContentRouter(RoutingKeyExtractor keyExtractor) {
+    this.mKeyExtractor = checkNotNull(keyExtractor);
+  }
+
+  /**
+   * Routes the messages with the key to the handler. Replaces the previous handler of the key.
+   *
+   * @param key     routing key
+   * @param handler message handler
+   * @return the current {@code ContentRouter} object
+   */
+  public ContentRouter addRoute(String key, MessageHandler handler) {
+    mRoutes.put(checkNotNull(key), checkNotNull(handler));
+    return this;
+  }
+
+  /**
+   * Removes the route of the key.
+   *
+   * @param key routing key
+   * @return the current {@code ContentRouter} object
+   */
+  public ContentRouter removeRoute(String key) {
+    mRoutes.remove(checkNotNull(key));
+    return this;
+  }
+
+  /**
+   * Sets the handler of messages that don't match any route.
+   *
+   * @param handler message handler, or {@code null} to drop such messages
+   * @return the current {@code ContentRouter} object
+   */
+  public ContentRouter setDefaultHandler(MessageHandler handler) {
+    this.mDefaultHandler = handler;
+    return this;
+  }
+
+  /**
+   * Returns the number of messages that didn't match any route and were dropped because the
+   * default handler isn't set.
+   *
+   * @return number of dropped messages
+   */
+  public long getUnroutedCount() {
+    return mUnroutedCount.get();
+  }
+
+  @Override
+  public void onSubscriptionData(SubscriptionData data) {
+    if (null == data.getMessages()) {
+      return;
+    }
+    for (AnyJson message : data.getMessages()) {
+      route(data, message);
+    }
+  }
+
+  private void route(SubscriptionData data, AnyJson message) {
+    MessageHandler handler = null;
+    try {
+      String key = mKeyExtractor.getKey(message);
+      if (null != key) {
+        handler = mRoutes.get(key);
+      }
+    } catch (Exception e) {
+      LOG.error("Unable to extract routing key", e);
+    }
+    if (null == handler) {
+      handler = mDefaultHandler;
+    }
+    if (null == handler) {
+      mUnroutedCount.incrementAndGet();
+      return;
+    }
+    try {
+      handler.onMessage(data, message);
+    } catch (Exception e) {
+      LOG.error("Suppress exception", e);
+    }
+  }
+}
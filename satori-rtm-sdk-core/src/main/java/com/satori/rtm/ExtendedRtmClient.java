@@ -0,0 +1,137 @@
+package com.satori.rtm;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import com.satori.rtm.model.ReadRequest;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@code ExtendedRtmClient} is an {@link RtmClient} with additional operations and counters of
+ * the RTM SDK client implementation.
+ * <p>
+ * The additional methods are kept out of {@link RtmClient} so that existing implementations of
+ * {@code RtmClient}, for example test doubles, keep compiling.
+ * <p>
+ * To create an extended client, use {@link RtmClientBuilder#buildExtended()}.
+ */
+public interface ExtendedRtmClient extends RtmClient {
+  /**
+   * Creates a Reactive Streams {@link org.reactivestreams.Publisher Publisher} of subscription
+   * data for the specified channel.
+   * <p>
+   * The subscription to the channel is created when a subscriber subscribes to the publisher, and
+   * removed when the subscriber cancels. Subscription data is delivered only as requested by the
+   * subscriber. If the subscriber falls behind, up to {@code bufferSize} items are buffered and
+   * then {@code overflowStrategy} is applied.
+   * <p>
+   * The publisher allows only one subscriber.
+   *
+   * @param channel          name of the channel
+   * @param modes            subscription modes
+   * @param bufferSize       maximum number of items buffered for the subscriber
+   * @param overflowStrategy what to do with subscription data when the buffer is full
+   * @return publisher of subscription data
+   */
+  SubscriptionPublisher createSubscriptionPublisher(String channel,
+                                                    EnumSet<SubscriptionMode> modes,
+                                                    int bufferSize,
+                                                    SubscriptionPublisher.OverflowStrategy overflowStrategy);
+
+  /**
+   * Publishes a batch of {@link PublishRequest} objects asynchronously.
+   * <p>
+   * The messages are sent back-to-back in the order of {@code requests}, in a single pass of the
+   * event dispatcher. If the client isn't connected, the whole batch takes a single slot in the
+   * pending queue. If the offline spool is set with
+   * {@link RtmClientBuilder#setOfflineSpool(com.satori.rtm.storage.SegmentLog, int)}, the messages
+   * are spooled instead, one record per message, in order with other publish requests. This is
+   * cheaper than calling {@link RtmClient#publish(PublishRequest, Ack) publish()} for every
+   * message when you publish many messages at once.
+   * <p>
+   * The returned {@link ListenableFuture} completes when every message of the batch is replied.
+   * It holds the {@link PublishReply} or the error of each message in the order of
+   * {@code requests}, so a failed message doesn't hide the replies of the others, see
+   * {@link PublishBatchResult}. If {@code ack} is {@link Ack#NO}, the replies are {@code null}.
+   * The future fails only if the batch can't be sent at all, see
+   * {@link RtmClient#publish(PublishRequest, Ack) publish()} for possible exceptions.
+   *
+   * @param requests publish requests
+   * @param ack      determines if RTM should acknowledge the publish operations
+   * @param <T>      type of the message parameters
+   * @return reply or error of each request
+   */
+  <T> ListenableFuture<PublishBatchResult> publishBatch(Collection<PublishRequest<T>> requests,
+                                                        Ack ack);
+
+  /**
+   * Returns the number of subscription callbacks waiting on each dispatch lane.
+   * <p>
+   * Use this method to find out if some subscriptions can't keep up with their channels. The
+   * list is empty unless lanes are enabled with
+   * {@link RtmClientBuilder#setSubscriptionDispatchLanes(int) RtmClientBuilder.setSubscriptionDispatchLanes()}.
+   *
+   * @return queue depth of each dispatch lane, indexed by lane number
+   */
+  List<Integer> getDispatchLaneQueueDepths();
+
+  /**
+   * Returns how long it took to resubscribe all subscriptions after the last connect.
+   * <p>
+   * The time is measured from the moment the client is connected until all subscribe requests
+   * sent on the connection are replied, either positively or negatively. Use this value to tune
+   * {@link RtmClientBuilder#setResubscribePacing(int, long, int)
+   * RtmClientBuilder.setResubscribePacing()}.
+   *
+   * @return time in milliseconds, or {@code -1} if the client hasn't resubscribed yet
+   */
+  long getLastResubscriptionTime();
+
+  /**
+   * Returns the counters of a subscription.
+   * <p>
+   * Use the counters to find out if a subscriber keeps up with its channel, see
+   * {@link SubscriptionStats}.
+   *
+   * @param subscriptionId subscription id or channel name
+   * @return subscription counters, or {@code null} if the subscription doesn't exist
+   */
+  SubscriptionStats getSubscriptionStats(String subscriptionId);
+
+  /**
+   * Returns the counters of all subscriptions, for example to export them to a metrics system.
+   *
+   * @return subscription counters by subscription id
+   * @see #getSubscriptionStats(String)
+   */
+  Map<String, SubscriptionStats> getSubscriptionStats();
+
+  /**
+   * Reads several keys from a key-value store. The operation is asynchronous.
+   * <p>
+   * The reads are pipelined: at most 64 of them wait for a reply at any moment, and the next
+   * read is sent as soon as a reply arrives. The returned future completes when all keys are
+   * read. A failure to read a key is reported in {@link ReadAllResult#getErrors()} and doesn't
+   * fail the other keys.
+   *
+   * @param requests read requests, one per key
+   * @return combined result of the reads, returned asynchronously
+   * @throws IllegalArgumentException if a key is requested more than once
+   */
+  ListenableFuture<ReadAllResult> readAll(Collection<ReadRequest> requests);
+
+  /**
+   * Reads several keys from a key-value store with at most {@code maxInFlight} reads waiting for
+   * a reply at any moment. The operation is asynchronous.
+   *
+   * @param requests    read requests, one per key
+   * @param maxInFlight maximum number of reads waiting for a reply
+   * @return combined result of the reads, returned asynchronously
+   * @throws IllegalArgumentException if a key is requested more than once
+   * @see #readAll(Collection)
+   */
+  ListenableFuture<ReadAllResult> readAll(Collection<ReadRequest> requests, int maxInFlight);
+}
@@ -0,0 +1,218 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.JsonFieldReader;
+
+/**
+ * Routes messages by the value of a top-level field of a JSON object.
+ * <p>
+ * Only the field is read, the message isn't converted to an object. The Gson and Jackson
+ * serializers read the field from their parsed JSON tree, see {@link JsonFieldReader}. For other
+ * {@link AnyJson} implementations the field is found by scanning the JSON text of the message.
+ * <p>
+ * String values are returned unquoted and unescaped, booleans as {@code "true"} or
+ * {@code "false"}, and integers exactly as they are written in the JSON. Other numbers are
+ * returned as written too, except with Jackson, which keeps them as doubles. If the message isn't
+ * a JSON object, or the field is missing, {@code null}, an object or an array, the message has
+ * no routing key.
+ * <p>
+ * For example, {@code new FieldKeyExtractor("type")} returns {@code "trade"} for the message
+ * <code>{"type":"trade","price":10}</code>.
+ */
+public class FieldKeyExtractor implements RoutingKeyExtractor {
+  private final String mField;
+
+  /**
+   * Creates an extractor of a top-level field.
+   *
+   * @param field name of the field
+   */
+  public FieldKeyExtractor(String field) {
+    this.mField = checkNotNull(field);
+  }
+
+  @Override
+  public String getKey(AnyJson message) {
+    if (null == message) {
+      return null;
+    }
+    if (message instanceof JsonFieldReader) {
+      return ((JsonFieldReader) message).readScalarField(mField);
+    }
+    return probe(message.toString(), mField);
+  }
+
+  static String probe(String json, String field) {
+    try {
+      return new Scanner(json).findField(field);
+    } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+      // malformed JSON
+      return null;
+    }
+  }
+
+  private static class Scanner {
+    private final String mJson;
+    private int mPos = 0;
+
+    Scanner(String json) {
+      this.mJson = json;
+    }
+
+    String findField(String field) {
+      skipWhitespace();
+      if ('{' != next()) {
+        return null;
+      }
+      while (true) {
+        skipWhitespace();
+        char c = next();
+        if ('}' == c || '"' != c) {
+          return null;
+        }
+        String name = readString();
+        skipWhitespace();
+        if (':' != next()) {
+          return null;
+        }
+        skipWhitespace();
+        if (field.equals(name)) {
+          return readScalar();
+        }
+        skipValue();
+        skipWhitespace();
+        if (',' != next()) {
+          return null;
+        }
+      }
+    }
+
+    private String readScalar() {
+      char c = peek();
+      if ('"' == c) {
+        mPos++;
+        return readString();
+      }
+      if ('{' == c || '[' == c) {
+        return null;
+      }
+      int start = mPos;
+      skipLiteral();
+      String literal = mJson.substring(start, mPos);
+      return "null".equals(literal) ? null : literal;
+    }
+
+    // reads the rest of a string whose opening quote is already consumed
+    private String readString() {
+      int start = mPos;
+      int end = mJson.indexOf('"', start);
+      int escape = mJson.indexOf('\\', start);
+      if (end < 0) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (escape < 0 || escape > end) {
+        mPos = end + 1;
+        return mJson.substring(start, end);
+      }
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        char c = next();
+        if ('"' == c) {
+          return sb.toString();
+        }
+        if ('\\' != c) {
+          sb.append(c);
+          continue;
+        }
+        char escaped = next();
+        switch (escaped) {
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            sb.append((char) Integer.parseInt(mJson.substring(mPos, mPos + 4), 16));
+            mPos += 4;
+            break;
+          default:
+            sb.append(escaped);
+        }
+      }
+    }
+
+    private void skipValue() {
+      char c = peek();
+      if ('"' == c) {
+        mPos++;
+        skipString();
+      } else if ('{' == c || '[' == c) {
+        skipContainer();
+      } else {
+        skipLiteral();
+      }
+    }
+
+    private void skipContainer() {
+      int depth = 0;
+      do {
+        char c = next();
+        if ('"' == c) {
+          skipString();
+        } else if ('{' == c || '[' == c) {
+          depth++;
+        } else if ('}' == c || ']' == c) {
+          depth--;
+        }
+      } while (0 < depth);
+    }
+
+    private void skipString() {
+      while (true) {
+        char c = next();
+        if ('"' == c) {
+          return;
+        }
+        if ('\\' == c) {
+          mPos++;
+        }
+      }
+    }
+
+    private void skipLiteral() {
+      while (mPos < mJson.length()) {
+        char c = mJson.charAt(mPos);
+        if (',' == c || '}' == c || ']' == c || Character.isWhitespace(c)) {
+          return;
+        }
+        mPos++;
+      }
+    }
+
+    private void skipWhitespace() {
+      while (mPos < mJson.length() && Character.isWhitespace(mJson.charAt(mPos))) {
+        mPos++;
+      }
+    }
+
+    private char peek() {
+      return mJson.charAt(mPos);
+    }
+
+    private char next() {
+      return mJson.charAt(mPos++);
+    }
+  }
+}
@@ -0,0 +1,386 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.SubscriptionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the history of a channel for a time range with several concurrent subscriptions.
+ * <p>
+ * The time range is split into equal sub-windows that don't overlap, and each sub-window is read
+ * by its own subscription with a persistence window, see
+ * {@link SubscriptionConfig#setPersistenceWindow(String, String, PersistenceHistoryMode)}.
+ * The listener receives the subscription data in position order: the data of the earliest
+ * unfinished sub-window is passed through right away, and the data of later sub-windows is
+ * buffered until all earlier sub-windows are finished.
+ * <p>
+ * The buffer is bounded by the number of messages. When a later sub-window overflows the buffer,
+ * its subscription is removed and its buffered data is dropped, and the sub-window is read again
+ * when it becomes the earliest unfinished one.
+ * <p>
+ * RTM doesn't signal the end of a persistence window, so a sub-window is finished when its
+ * subscription receives no data for the idle timeout while it's subscribed. The timeout must be
+ * longer than the gaps between the messages that RTM sends for the history.
+ * <p>
+ * A subscription error, a failed subscribe or subscription info fails the whole backfill. RTM
+ * sends subscription info when it fast-forwards a subscription, so some history is lost.
+ * Cancelling the returned future removes the subscriptions of the unfinished sub-windows.
+ * <p>
+ * The subscription ids are unique to each backfill, so the positions that a checkpoint store kept
+ * for the sub-windows of an interrupted backfill never resume a later one.
+ * <p>
+ * For example:
+ * <pre>
+ * HistoryBackfill backfill =
+ *     new HistoryBackfill(client, "my_channel", start, end, 8, scheduler, 5000);
+ * backfill.start(new SubscriptionAdapter() {
+ *   &#64;Override
+ *   public void onSubscriptionData(SubscriptionData data) {
+ *     // data arrives in position order
+ *   }
+ * }).get();
+ * </pre>
+ */
+public class HistoryBackfill {
+  private final static Logger LOG = LoggerFactory.getLogger(HistoryBackfill.class);
+  private static final int DEFAULT_MAX_BUFFERED_MESSAGES = 100000;
+
+  private final RtmClient mClient;
+  private final String mChannel;
+  private final long mStartTimestamp;
+  private final long mEndTimestamp;
+  private final int mWindowCount;
+  private final ScheduledExecutorService mScheduler;
+  private final long mIdleTimeoutNanos;
+  private final Ticker mTicker;
+  private final String mRunId = UUID.randomUUID().toString();
+  private int mMaxBufferedMessages = DEFAULT_MAX_BUFFERED_MESSAGES;
+  // guarded by this
+  private final List<Window> mWindows = new ArrayList<Window>();
+  private final SettableFuture<Void> mResult = SettableFuture.create();
+  private SubscriptionListener mListener;
+  private ScheduledFuture<?> mIdleCheck;
+  private int mHead = 0;
+  private int mBufferedMessages = 0;
+
+  /**
+   * Creates a backfill of the time range.
+   *
+   * @param client            RTM client to subscribe with
+   * @param channel           channel to read the history of
+   * @param startTimestamp    start of the time range, inclusive
+   * @param endTimestamp      end of the time range, inclusive
+   * @param windows           number of sub-windows, read concurrently
+   * @param scheduler         scheduler that checks the idle timeout
+   * @param idleTimeoutMillis time in milliseconds without data after which a sub-window is
+   *                          finished
+   */
+  public HistoryBackfill(RtmClient client, String channel, long startTimestamp,
+                         long endTimestamp, int windows, ScheduledExecutorService scheduler,
+                         long idleTimeoutMillis) {
+    this(client, channel, startTimestamp, endTimestamp, windows, scheduler, idleTimeoutMillis,
+        Ticker.systemTicker());
+  }
+
+  HistoryBackfill(RtmClient client, String channel, long startTimestamp, long endTimestamp,
+                  int windows, ScheduledExecutorService scheduler, long idleTimeoutMillis,
+                  Ticker ticker) {
+    checkArgument(startTimestamp <= endTimestamp, "Time range is invalid: [%s, %s]",
+        startTimestamp, endTimestamp);
+    checkArgument(0 < windows, "Number of windows must be positive: %s", windows);
+    checkArgument(0 < idleTimeoutMillis, "Idle timeout must be positive: %s", idleTimeoutMillis);
+    this.mClient = checkNotNull(client);
+    this.mChannel = checkNotNull(channel);
+    this.mStartTimestamp = startTimestamp;
+    this.mEndTimestamp = endTimestamp;
+    // a sub-window covers at least one timestamp
+    this.mWindowCount = (int) Math.min(windows, endTimestamp - startTimestamp + 1);
+    this.mScheduler = checkNotNull(scheduler);
+    this.mIdleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    this.mTicker = checkNotNull(ticker);
+  }
+
+  /**
+   * Sets the maximum number of messages buffered for the later sub-windows. The default is
+   * {@value #DEFAULT_MAX_BUFFERED_MESSAGES}.
+   *
+   * @param maxBufferedMessages maximum number of buffered messages
+   * @return the current {@code HistoryBackfill} object
+   */
+  public HistoryBackfill setMaxBufferedMessages(int maxBufferedMessages) {
+    checkArgument(0 < maxBufferedMessages, "Buffer size must be positive: %s",
+        maxBufferedMessages);
+    this.mMaxBufferedMessages = maxBufferedMessages;
+    return this;
+  }
+
+  /**
+   * Subscribes to all sub-windows.
+   * <p>
+   * Only {@link SubscriptionListener#onSubscriptionData(SubscriptionData)} of the listener is
+   * called, one call at a time.
+   *
+   * @param listener listener to receive the subscription data
+   * @return future that completes when all sub-windows are finished, cancel it to stop the
+   * backfill
+   */
+  public synchronized ListenableFuture<Void> start(SubscriptionListener listener) {
+    checkState(null == mListener, "Backfill is already started");
+    mListener = checkNotNull(listener);
+    mResult.addListener(new Runnable() {
+      @Override
+      public void run() {
+        onCancelled();
+      }
+    }, MoreExecutors.directExecutor());
+    long span = mEndTimestamp - mStartTimestamp + 1;
+    for (int i = 0; i < mWindowCount; i++) {
+      long start = mStartTimestamp + span * i / mWindowCount;
+      long end = mStartTimestamp + span * (i + 1) / mWindowCount - 1;
+      Window window = new Window(i, start, end);
+      mWindows.add(window);
+      subscribe(window);
+    }
+    long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(mIdleTimeoutNanos) / 4);
+    mIdleCheck = mScheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkIdleWindows();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+    return mResult;
+  }
+
+  /**
+   * Removes the subscriptions of all unfinished sub-windows and cancels the backfill.
+   */
+  public void cancel() {
+    mResult.cancel(false);
+  }
+
+  /**
+   * Returns the number of messages buffered for the later sub-windows.
+   *
+   * @return number of buffered messages
+   */
+  public synchronized int getBufferedMessages() {
+    return mBufferedMessages;
+  }
+
+  private void subscribe(Window window) {
+    window.mAttempt++;
+    window.mState = State.ACTIVE;
+    window.mIsSubscribed = false;
+    window.mSubscriptionId = String.format("%s.backfill.%s.%d.%d",
+        mChannel, mRunId, window.mIndex, window.mAttempt);
+    SubscriptionConfig config =
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new WindowListener(window))
+            .setFilter(String.format("select * from `%s`", mChannel))
+            .setPersistenceWindow(String.valueOf(window.mStart), String.valueOf(window.mEnd),
+                PersistenceHistoryMode.TIMESTAMPS);
+    mClient.createSubscription(window.mSubscriptionId, config);
+  }
+
+  private void unsubscribe(Window window) {
+    window.mState = State.STOPPED;
+    mClient.removeSubscription(window.mSubscriptionId);
+  }
+
+  private synchronized void onData(Window window, int attempt, SubscriptionData data) {
+    if (!window.isCurrent(attempt)) {
+      return;
+    }
+    window.mLastActivityNanos = mTicker.read();
+    if (window.mIndex == mHead) {
+      mListener.onSubscriptionData(data);
+      return;
+    }
+    int count = Iterables.size(data.getMessages());
+    if (mBufferedMessages + count > mMaxBufferedMessages) {
+      LOG.debug("Backfill buffer is full, window {} is read again later", window.mIndex);
+      unsubscribe(window);
+      mBufferedMessages -= window.mBufferedMessages;
+      window.mBuffer.clear();
+      window.mBufferedMessages = 0;
+      return;
+    }
+    window.mBuffer.add(data);
+    window.mBufferedMessages += count;
+    mBufferedMessages += count;
+  }
+
+  private synchronized void onSubscribed(Window window, int attempt, boolean isSubscribed) {
+    if (!window.isCurrent(attempt)) {
+      return;
+    }
+    // the idle timeout runs only while the subscription can receive data
+    window.mIsSubscribed = isSubscribed;
+    window.mLastActivityNanos = mTicker.read();
+  }
+
+  private synchronized void onFailed(Window window, int attempt, String reason) {
+    if (!window.isCurrent(attempt)) {
+      return;
+    }
+    String message = String.format("Backfill of window [%d, %d] failed: %s",
+        window.mStart, window.mEnd, reason);
+    if (mResult.setException(new IllegalStateException(message))) {
+      stopAll();
+    }
+  }
+
+  private synchronized void onCancelled() {
+    if (mResult.isCancelled()) {
+      stopAll();
+    }
+  }
+
+  private synchronized void checkIdleWindows() {
+    if (mResult.isDone()) {
+      return;
+    }
+    long now = mTicker.read();
+    for (Window window : new ArrayList<Window>(mWindows)) {
+      if (State.ACTIVE == window.mState && window.mIsSubscribed
+          && now - window.mLastActivityNanos >= mIdleTimeoutNanos) {
+        unsubscribe(window);
+        window.mState = State.FINISHED;
+      }
+    }
+    advance();
+  }
+
+  // guarded by this
+  private void advance() {
+    while (mHead < mWindows.size() && State.FINISHED == mWindows.get(mHead).mState) {
+      mHead++;
+      if (mHead == mWindows.size()) {
+        break;
+      }
+      Window head = mWindows.get(mHead);
+      // the new head passes its buffered data through and continues live
+      SubscriptionData data;
+      while (null != (data = head.mBuffer.poll())) {
+        mListener.onSubscriptionData(data);
+      }
+      mBufferedMessages -= head.mBufferedMessages;
+      head.mBufferedMessages = 0;
+      if (State.STOPPED == head.mState) {
+        subscribe(head);
+      }
+    }
+    if (mHead == mWindows.size()) {
+      cancelIdleCheck();
+      mResult.set(null);
+    }
+  }
+
+  // guarded by this
+  private void stopAll() {
+    for (Window window : mWindows) {
+      if (State.ACTIVE == window.mState) {
+        unsubscribe(window);
+      }
+      window.mBuffer.clear();
+    }
+    mBufferedMessages = 0;
+    cancelIdleCheck();
+  }
+
+  private void cancelIdleCheck() {
+    if (null != mIdleCheck) {
+      mIdleCheck.cancel(false);
+    }
+  }
+
+  private enum State {
+    ACTIVE,
+    STOPPED,
+    FINISHED
+  }
+
+  private static class Window {
+    final int mIndex;
+    final long mStart;
+    final long mEnd;
+    final Queue<SubscriptionData> mBuffer = new ArrayDeque<SubscriptionData>();
+    State mState = State.STOPPED;
+    String mSubscriptionId;
+    boolean mIsSubscribed = false;
+    int mAttempt = 0;
+    int mBufferedMessages = 0;
+    long mLastActivityNanos;
+
+    Window(int index, long start, long end) {
+      this.mIndex = index;
+      this.mStart = start;
+      this.mEnd = end;
+    }
+
+    boolean isCurrent(int attempt) {
+      return State.ACTIVE == mState && attempt == mAttempt;
+    }
+  }
+
+  private class WindowListener extends SubscriptionAdapter {
+    private final Window mWindow;
+    private final int mAttempt;
+
+    WindowListener(Window window) {
+      this.mWindow = window;
+      this.mAttempt = window.mAttempt;
+    }
+
+    @Override
+    public void onSubscriptionData(SubscriptionData data) {
+      onData(mWindow, mAttempt, data);
+    }
+
+    @Override
+    public void onEnterSubscribed(SubscribeRequest request, SubscribeReply reply) {
+      onSubscribed(mWindow, mAttempt, true);
+    }
+
+    @Override
+    public void onLeaveSubscribed(SubscribeRequest request, SubscribeReply reply) {
+      onSubscribed(mWindow, mAttempt, false);
+    }
+
+    @Override
+    public void onSubscriptionInfo(SubscriptionInfo info) {
+      // the subscription is fast-forwarded, the skipped messages can't be read again
+      onFailed(mWindow, mAttempt, "subscription is fast-forwarded: " + info.getReason());
+    }
+
+    @Override
+    public void onSubscriptionError(SubscriptionError error) {
+      onFailed(mWindow, mAttempt, error.getReason());
+    }
+
+    @Override
+    public void onEnterFailed() {
+      onFailed(mWindow, mAttempt, "subscribe is failed");
+    }
+  }
+}
@@ -0,0 +1,382 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.DeleteReply;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.ReadReply;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.WriteReply;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Read-through cache of key-value reads.
+ * <p>
+ * {@link #read(String)} returns the cached reply for the key if there is one, otherwise it reads
+ * the key from RTM and caches the reply. Concurrent reads of a key that isn't cached share one
+ * RTM request. Entries are evicted when the cache exceeds its maximum size and when they're older
+ * than the TTL. Failed reads aren't cached.
+ * <p>
+ * Writes and deletes made through the cache give read-your-writes consistency: after a write,
+ * reads of the key return a value read from RTM after the write is acknowledged.
+ * <p>
+ * Optionally, the cache subscribes to the channel of each cached key and refreshes the entry when
+ * a newer message is published to the channel, so other clients' writes are seen before the TTL
+ * expires. A message that arrives while the key is being read makes the cache read the key again
+ * when the pending read completes. The subscription is removed when the entry is evicted, and the
+ * entry is evicted when the subscription is interrupted, for example by a disconnect.
+ * <p>
+ * For example:
+ * <pre>
+ * KeyValueCache cache = new KeyValueCache(client, 10000, 60000, true);
+ * ReadReply reply = cache.read("my_key").get().getBody();
+ * </pre>
+ */
+public class KeyValueCache {
+  private static final String SUBSCRIPTION_PREFIX = "kv-cache.";
+
+  private final RtmClient mClient;
+  private final boolean mIsSubscribing;
+  private final Cache<String, Entry> mCache;
+  private final ConcurrentMap<String, Entry> mEntries;
+  private final AtomicLong mSubscriptionCounter = new AtomicLong();
+
+  /**
+   * Creates a cache that relies only on the TTL to see changes made by other clients.
+   *
+   * @param client      RTM client to read and write with
+   * @param maximumSize maximum number of cached keys
+   * @param ttlMillis   time in milliseconds after which an entry is read again
+   */
+  public KeyValueCache(RtmClient client, long maximumSize, long ttlMillis) {
+    this(client, maximumSize, ttlMillis, false);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param client      RTM client to read and write with
+   * @param maximumSize maximum number of cached keys
+   * @param ttlMillis   time in milliseconds after which an entry is read again
+   * @param subscribe   {@code true} to refresh entries from subscriptions to the keys' channels
+   */
+  public KeyValueCache(RtmClient client, long maximumSize, long ttlMillis, boolean subscribe) {
+    this(client, maximumSize, ttlMillis, subscribe, Ticker.systemTicker());
+  }
+
+  KeyValueCache(RtmClient client, long maximumSize, long ttlMillis, boolean subscribe,
+                Ticker ticker) {
+    checkArgument(0 < maximumSize, "Maximum size must be positive: %s", maximumSize);
+    checkArgument(0 < ttlMillis, "TTL must be positive: %s", ttlMillis);
+    this.mClient = checkNotNull(client);
+    this.mIsSubscribing = subscribe;
+    this.mCache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .ticker(ticker)
+        .removalListener(new RemovalListener<String, Entry>() {
+          @Override
+          public void onRemoval(RemovalNotification<String, Entry> notification) {
+            if (RemovalCause.REPLACED != notification.getCause()) {
+              unsubscribe(notification.getValue());
+            }
+          }
+        })
+        .build();
+    this.mEntries = mCache.asMap();
+  }
+
+  /**
+   * Returns the cached value of the key or reads it from RTM.
+   *
+   * @param key key to read
+   * @return future of the read reply
+   */
+  public ListenableFuture<Pdu<ReadReply>> read(String key) {
+    Entry entry = mEntries.get(key);
+    if (null != entry) {
+      return entry.mValue.get();
+    }
+    SettableFuture<Pdu<ReadReply>> value = SettableFuture.create();
+    entry = newEntry(key, value);
+    Entry existing = mEntries.putIfAbsent(key, entry);
+    if (null != existing) {
+      return existing.mValue.get();
+    }
+    subscribe(entry);
+    value.setFuture(mClient.read(key));
+    evictOnFailure(entry, value);
+    return value;
+  }
+
+  /**
+   * Writes the value to the key, see {@link RtmClient#write(String, Object, Ack)}.
+   * <p>
+   * Until the write is acknowledged, reads of the key wait for it and then read the key again.
+   *
+   * @param key   key to write
+   * @param value value to write
+   * @param ack   acknowledgement mode
+   * @param <T>   type of the value
+   * @return future of the write reply
+   */
+  public <T> ListenableFuture<Pdu<WriteReply>> write(String key, T value, Ack ack) {
+    ListenableFuture<Pdu<WriteReply>> reply = mClient.write(key, value, ack);
+    update(key, reply);
+    return reply;
+  }
+
+  /**
+   * Deletes the key, see {@link RtmClient#delete(String, Ack)}.
+   * <p>
+   * Until the delete is acknowledged, reads of the key wait for it and then read the key again.
+   *
+   * @param key key to delete
+   * @param ack acknowledgement mode
+   * @return future of the delete reply
+   */
+  public ListenableFuture<Pdu<DeleteReply>> delete(String key, Ack ack) {
+    ListenableFuture<Pdu<DeleteReply>> reply = mClient.delete(key, ack);
+    update(key, reply);
+    return reply;
+  }
+
+  /**
+   * Removes the key from the cache.
+   *
+   * @param key key to remove
+   */
+  public void invalidate(String key) {
+    mCache.invalidate(key);
+  }
+
+  /**
+   * Removes all keys from the cache.
+   */
+  public void invalidateAll() {
+    mCache.invalidateAll();
+  }
+
+  /**
+   * Returns the approximate number of cached keys.
+   *
+   * @return number of cached keys
+   */
+  public long size() {
+    return mCache.size();
+  }
+
+  private void update(final String key, ListenableFuture<?> change) {
+    ListenableFuture<Pdu<ReadReply>> value = Futures.transformAsync(change,
+        new AsyncFunction<Object, Pdu<ReadReply>>() {
+          @Override
+          public ListenableFuture<Pdu<ReadReply>> apply(Object input) {
+            return mClient.read(key);
+          }
+        });
+    Entry entry = mEntries.get(key);
+    if (null == entry) {
+      entry = newEntry(key, value);
+      Entry existing = mEntries.putIfAbsent(key, entry);
+      if (null == existing) {
+        subscribe(entry);
+        evictOnFailure(entry, value);
+        return;
+      }
+      entry = existing;
+    }
+    // a write replaces any value, its read is newer than all of them
+    entry.mValue.set(value);
+    // resets the TTL of the entry
+    mEntries.replace(key, entry, entry);
+    evictOnFailure(entry, value);
+  }
+
+  private void evictOnFailure(final Entry entry, final ListenableFuture<Pdu<ReadReply>> value) {
+    Futures.addCallback(value, new FutureCallback<Pdu<ReadReply>>() {
+      @Override
+      public void onSuccess(Pdu<ReadReply> result) {
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (entry.mValue.get() == value) {
+          mEntries.remove(entry.mKey, entry);
+        }
+      }
+    });
+  }
+
+  private Entry newEntry(String key, ListenableFuture<Pdu<ReadReply>> value) {
+    String subscriptionId = mIsSubscribing
+        ? SUBSCRIPTION_PREFIX + mSubscriptionCounter.incrementAndGet()
+        : null;
+    return new Entry(key, value, subscriptionId);
+  }
+
+  private void subscribe(Entry entry) {
+    if (null == entry.mSubscriptionId) {
+      return;
+    }
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.SIMPLE,
+        new EntryListener(entry))
+        .setFilter(String.format("select * from `%s`", entry.mKey));
+    synchronized (entry) {
+      if (entry.mIsUnsubscribed) {
+        // the entry was evicted before the subscription was created
+        return;
+      }
+      entry.mIsSubscribed = true;
+      mClient.createSubscription(entry.mSubscriptionId, config);
+    }
+    if (mEntries.get(entry.mKey) != entry) {
+      // the entry was evicted while the subscription was created
+      unsubscribe(entry);
+    }
+  }
+
+  // both the eviction and subscribe() may remove the subscription, only the first one does it
+  private void unsubscribe(Entry entry) {
+    if (null == entry.mSubscriptionId) {
+      return;
+    }
+    synchronized (entry) {
+      if (entry.mIsUnsubscribed) {
+        return;
+      }
+      entry.mIsUnsubscribed = true;
+      if (entry.mIsSubscribed) {
+        mClient.removeSubscription(entry.mSubscriptionId);
+      }
+    }
+  }
+
+  private void refresh(Entry entry, SubscriptionData data) {
+    while (mEntries.get(entry.mKey) == entry) {
+      ListenableFuture<Pdu<ReadReply>> current = entry.mValue.get();
+      ListenableFuture<Pdu<ReadReply>> value;
+      boolean isMarked = false;
+      if (current.isDone()) {
+        value = newerValue(current, data);
+      } else if (entry.mIsStale.compareAndSet(false, true)) {
+        isMarked = true;
+        // the pending read may have been served before the message, read the key again after it
+        value = readAgain(entry, current);
+      } else {
+        // the key is already read again after the pending read
+        return;
+      }
+      if (null == value) {
+        return;
+      }
+      if (entry.mValue.compareAndSet(current, value)) {
+        mEntries.replace(entry.mKey, entry, entry);
+        if (!value.isDone()) {
+          evictOnFailure(entry, value);
+        }
+        return;
+      }
+      // a write changed the value, check the data against the new one
+      if (isMarked) {
+        entry.mIsStale.set(false);
+      }
+    }
+  }
+
+  private ListenableFuture<Pdu<ReadReply>> readAgain(final Entry entry,
+                                                    ListenableFuture<Pdu<ReadReply>> current) {
+    return Futures.transformAsync(current, new AsyncFunction<Pdu<ReadReply>, Pdu<ReadReply>>() {
+      @Override
+      public ListenableFuture<Pdu<ReadReply>> apply(Pdu<ReadReply> input) {
+        // messages that arrive from now on are seen by this read or refresh its value
+        entry.mIsStale.set(false);
+        return mClient.read(entry.mKey);
+      }
+    });
+  }
+
+  // returns null if the cached value is newer than the data or has failed
+  private static ListenableFuture<Pdu<ReadReply>> newerValue(
+      ListenableFuture<Pdu<ReadReply>> current, SubscriptionData data) {
+    Pdu<ReadReply> cachedReply;
+    try {
+      cachedReply = Futures.getUnchecked(current);
+    } catch (RuntimeException ex) {
+      // the failed entry is being evicted
+      return null;
+    }
+    StreamPosition position = StreamPosition.parse(data.getPosition());
+    StreamPosition cached = StreamPosition.parse(cachedReply.getBody().getPosition());
+    if (null != position && null != cached && cached.isSameEpoch(position)
+        && position.compareTo(cached) <= 0) {
+      return null;
+    }
+    AnyJson message = Iterables.getLast(data.getMessages(), null);
+    ReadReply reply = new ReadReply();
+    reply.setPosition(data.getPosition());
+    reply.setMessage(message);
+    return Futures.immediateFuture(new Pdu<ReadReply>("rtm/read/ok", reply));
+  }
+
+  private static class Entry {
+    final String mKey;
+    final String mSubscriptionId;
+    final AtomicReference<ListenableFuture<Pdu<ReadReply>>> mValue;
+    // true while a read of the key is scheduled after the pending one
+    final AtomicBoolean mIsStale = new AtomicBoolean(false);
+    // guarded by this
+    boolean mIsSubscribed = false;
+    boolean mIsUnsubscribed = false;
+
+    Entry(String key, ListenableFuture<Pdu<ReadReply>> value, String subscriptionId) {
+      this.mKey = key;
+      this.mValue = new AtomicReference<ListenableFuture<Pdu<ReadReply>>>(value);
+      this.mSubscriptionId = subscriptionId;
+    }
+  }
+
+  private class EntryListener extends SubscriptionAdapter {
+    private final Entry mEntry;
+
+    EntryListener(Entry entry) {
+      this.mEntry = entry;
+    }
+
+    @Override
+    public void onSubscriptionData(SubscriptionData data) {
+      refresh(mEntry, data);
+    }
+
+    @Override
+    public void onLeaveSubscribed(SubscribeRequest request, SubscribeReply reply) {
+      // changes can't be observed until the key is read again
+      mEntries.remove(mEntry.mKey, mEntry);
+    }
+
+    @Override
+    public void onSubscriptionError(SubscriptionError error) {
+      mEntries.remove(mEntry.mKey, mEntry);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package com.satori.rtm;
+
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.model.UnsubscribeReply;
+import com.satori.rtm.model.UnsubscribeRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/*
+ * Runs the callbacks of a user subscription listener on the worker lane of the subscription.
+ *
+ * All callbacks are enqueued to the same lane, so the user listener observes them in the order
+ * in which the subscription state machine produced them. If the subscription is partitioned by
+ * channel, subscription data is enqueued to the lane of its channel instead.
+ *
+ * If the subscription is conflated, subscription data that is still waiting on the lane is
+ * replaced by newer data with the same key. Any other callback starts a new set of pending data,
+ * so data is never moved ahead of a callback that preceded it.
+ */
+class LaneSubscriptionListener implements SubscriptionListener {
+  private final static Logger LOG = LoggerFactory.getLogger(LaneSubscriptionListener.class);
+  private final SubscriptionConfig mConfig;
+  private final SubscriptionListener mListener;
+  private final Executor mLane;
+  private final SubscriptionLanes mDataLanes;
+  private final ConflationKeyExtractor mConflationKeys;
+  // guarded by this
+  private Map<String, SubscriptionData> mPendingData = new HashMap<String, SubscriptionData>();
+
+  LaneSubscriptionListener(SubscriptionConfig config, Executor lane,
+                           SubscriptionLanes dataLanes) {
+    this.mConfig = config;
+    this.mListener = config.getUserListener();
+    this.mLane = lane;
+    this.mDataLanes = dataLanes;
+    this.mConflationKeys = config.getConflationKeyExtractor();
+  }
+
+  @Override
+  public void onSubscriptionData(SubscriptionData data) {
+    Executor lane = dataLane(data);
+    String key = conflationKey(data);
+    if (null == key) {
+      lane.execute(new DataTask(mListener, data));
+      return;
+    }
+    synchronized (this) {
+      if (null != mPendingData.put(key, data)) {
+        mConfig.onConflated();
+        return;
+      }
+      // enqueue under the lock, so that no other callback can get ahead of this data
+      lane.execute(new ConflatedDataTask(mPendingData, key));
+    }
+  }
+
+  private Executor dataLane(SubscriptionData data) {
+    String channel = data.getChannel();
+    if (null == mDataLanes || null == channel) {
+      return mLane;
+    }
+    return mDataLanes.laneFor(channel);
+  }
+
+  private String conflationKey(SubscriptionData data) {
+    if (null == mConflationKeys) {
+      return null;
+    }
+    String key;
+    try {
+      key = mConflationKeys.getKey(data);
+    } catch (RuntimeException ex) {
+      LOG.error("Suppress exception", ex);
+      return null;
+    }
+    if (null == key || null == mDataLanes || null == data.getChannel()) {
+      return key;
+    }
+    // data of different channels can be on different lanes and must never replace each other
+    return data.getChannel() + '\u0000' + key;
+  }
+
+  private void enqueue(Runnable task) {
+    if (null == mConflationKeys) {
+      mLane.execute(task);
+      return;
+    }
+    synchronized (this) {
+      if (!mPendingData.isEmpty()) {
+        mPendingData = new HashMap<String, SubscriptionData>();
+      }
+      mLane.execute(task);
+    }
+  }
+
+  @Override
+  public void onCreated() {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onCreated();
+      }
+    });
+  }
+
+  @Override
+  public void onDeleted() {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onDeleted();
+      }
+    });
+  }
+
+  @Override
+  public void onEnterUnsubscribed(final UnsubscribeRequest request, final UnsubscribeReply reply) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onEnterUnsubscribed(request, reply);
+      }
+    });
+  }
+
+  @Override
+  public void onLeaveUnsubscribed(final UnsubscribeRequest request, final UnsubscribeReply reply) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onLeaveUnsubscribed(request, reply);
+      }
+    });
+  }
+
+  @Override
+  public void onEnterSubscribing(final SubscribeRequest request) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onEnterSubscribing(request);
+      }
+    });
+  }
+
+  @Override
+  public void onLeaveSubscribing(final SubscribeRequest request) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onLeaveSubscribing(request);
+      }
+    });
+  }
+
+  @Override
+  public void onEnterSubscribed(final SubscribeRequest request, final SubscribeReply reply) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onEnterSubscribed(request, reply);
+      }
+    });
+  }
+
+  @Override
+  public void onLeaveSubscribed(final SubscribeRequest request, final SubscribeReply reply) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onLeaveSubscribed(request, reply);
+      }
+    });
+  }
+
+  @Override
+  public void onEnterUnsubscribing(final UnsubscribeRequest request) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onEnterUnsubscribing(request);
+      }
+    });
+  }
+
+  @Override
+  public void onLeaveUnsubscribing(final UnsubscribeRequest request) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onLeaveUnsubscribing(request);
+      }
+    });
+  }
+
+  @Override
+  public void onEnterFailed() {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onEnterFailed();
+      }
+    });
+  }
+
+  @Override
+  public void onLeaveFailed() {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onLeaveFailed();
+      }
+    });
+  }
+
+  @Override
+  public void onSubscriptionError(final SubscriptionError error) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onSubscriptionError(error);
+      }
+    });
+  }
+
+  @Override
+  public void onSubscriptionInfo(final SubscriptionInfo info) {
+    enqueue(new Runnable() {
+      @Override
+      public void run() {
+        mListener.onSubscriptionInfo(info);
+      }
+    });
+  }
+
+  private final class ConflatedDataTask implements Runnable {
+    private final Map<String, SubscriptionData> mPending;
+    private final String mKey;
+
+    ConflatedDataTask(Map<String, SubscriptionData> pending, String key) {
+      this.mPending = pending;
+      this.mKey = key;
+    }
+
+    @Override
+    public void run() {
+      SubscriptionData data;
+      synchronized (LaneSubscriptionListener.this) {
+        data = mPending.remove(mKey);
+      }
+      mListener.onSubscriptionData(data);
+    }
+  }
+
+  private static final class DataTask implements Runnable {
+    private final SubscriptionListener mListener;
+    private final SubscriptionData mData;
+
+    DataTask(SubscriptionListener listener, SubscriptionData data) {
+      this.mListener = listener;
+      this.mData = data;
+    }
+
+    @Override
+    public void run() {
+      mListener.onSubscriptionData(mData);
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.satori.rtm;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscriptionData;
+
+/**
+ * Handles the messages that {@link ContentRouter} routes to it.
+ */
+public interface MessageHandler {
+  /**
+   * Called for each message routed to the handler.
+   *
+   * @param data    subscription data that contains the message
+   * @param message routed message
+   */
+  void onMessage(SubscriptionData data, AnyJson message);
+}
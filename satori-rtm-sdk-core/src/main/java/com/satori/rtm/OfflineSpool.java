@@ -0,0 +1,265 @@
+package com.satori.rtm;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.connection.Serializer;
+import com.satori.rtm.model.DeleteReply;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PduException;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.WriteReply;
+import com.satori.rtm.storage.SegmentLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/*
+ * Keeps publish, write and delete requests made while the client is offline in a segment log,
+ * and replays them in order when the client connects.
+ *
+ * At most maxInFlight replayed requests wait for a reply at any moment. A record is removed from
+ * the log when RTM replies to it, positively or negatively. If the connection is lost during
+ * the replay, the unreplied records are sent again on the next connection, so a request may be
+ * delivered more than once. A request that fails without a reply from RTM while the connection
+ * stays open is sent again right away, up to MAX_ATTEMPTS times, and then it fails and its record
+ * is removed, so it doesn't hold back the rest of the spool. Records recovered from a previous run
+ * of the application have no futures, their results are only logged.
+ */
+class OfflineSpool {
+  private final static Logger LOG = LoggerFactory.getLogger(OfflineSpool.class);
+  private static final Map<String, Class<?>> REPLY_TYPES = ImmutableMap.<String, Class<?>>of(
+      "rtm/publish", PublishReply.class,
+      "rtm/write", WriteReply.class,
+      "rtm/delete", DeleteReply.class);
+  private static final byte ACK_YES = 1;
+  private static final byte ACK_NO = 0;
+  private static final int MAX_ATTEMPTS = 3;
+
+  private final SegmentLog mLog;
+  private final Serializer mSerializer;
+  private final int mMaxInFlight;
+  // guarded by this
+  private final Deque<Entry> mUnsent = new ArrayDeque<Entry>();
+  private final Deque<Entry> mSent = new ArrayDeque<Entry>();
+  private Connection mConnection;
+  private long mGeneration = 0;
+  private boolean mIsPumping = false;
+  private boolean mPumpAgain = false;
+
+  OfflineSpool(SegmentLog log, Serializer serializer, int maxInFlight) {
+    this.mLog = log;
+    this.mSerializer = serializer;
+    this.mMaxInFlight = maxInFlight;
+    for (int i = 0; i < log.size(); i++) {
+      mUnsent.add(new Entry(null));
+    }
+  }
+
+  static boolean isSpooled(String action) {
+    return REPLY_TYPES.containsKey(action);
+  }
+
+  synchronized boolean isEmpty() {
+    return mUnsent.isEmpty() && mSent.isEmpty();
+  }
+
+  <T> ListenableFuture<Pdu<T>> enqueue(String action, Object payload, Ack ack) {
+    SettableFuture<Object> future = SettableFuture.create();
+    byte[] json = mSerializer.toJson(new Pdu<Object>(action, payload)).getBytes(Charsets.UTF_8);
+    byte[] record = new byte[json.length + 1];
+    record[0] = (Ack.NO == ack) ? ACK_NO : ACK_YES;
+    System.arraycopy(json, 0, record, 1, json.length);
+    synchronized (this) {
+      try {
+        mLog.append(record);
+      } catch (IOException ex) {
+        future.setException(new IllegalStateException("Offline spool is full", ex));
+        return cast(future);
+      }
+      mUnsent.add(new Entry(future));
+    }
+    pump();
+    return cast(future);
+  }
+
+  void onConnected(Connection connection) {
+    synchronized (this) {
+      mConnection = connection;
+    }
+    pump();
+  }
+
+  synchronized void onDisconnected() {
+    mConnection = null;
+    mGeneration++;
+    // unreplied requests are sent again, in the original order, on the next connection
+    Iterator<Entry> sent = mSent.descendingIterator();
+    while (sent.hasNext()) {
+      mUnsent.addFirst(sent.next());
+    }
+    mSent.clear();
+    mLog.rewind();
+  }
+
+  private void pump() {
+    synchronized (this) {
+      // replies may arrive while requests are sent, the pumping thread picks them up
+      mPumpAgain = true;
+      if (mIsPumping) {
+        return;
+      }
+      mIsPumping = true;
+    }
+    while (true) {
+      List<Completion> completions = new ArrayList<Completion>();
+      synchronized (this) {
+        if (!mPumpAgain) {
+          mIsPumping = false;
+          return;
+        }
+        mPumpAgain = false;
+        collectCompleted(completions);
+        while (null != mConnection && mSent.size() < mMaxInFlight && !mUnsent.isEmpty()) {
+          Entry entry = mUnsent.poll();
+          byte[] record = mLog.next();
+          entry.mRecord = record;
+          mSent.add(entry);
+          send(mConnection, entry, record);
+        }
+      }
+      for (Completion completion : completions) {
+        completion.run();
+      }
+    }
+  }
+
+  // guarded by this
+  private void send(Connection connection, final Entry entry, byte[] record) {
+    final long generation = mGeneration;
+    PduRaw pdu;
+    try {
+      pdu = mSerializer.parsePdu(
+          new String(Arrays.copyOfRange(record, 1, record.length), Charsets.UTF_8));
+    } catch (Exception ex) {
+      // a record that can't be parsed will never succeed, drop it
+      LOG.error("Unable to replay offline record", ex);
+      entry.mIsDone = true;
+      entry.mError = new IllegalStateException("Offline record is corrupted", ex);
+      mPumpAgain = true;
+      return;
+    }
+    ListenableFuture<?> reply;
+    try {
+      if (ACK_NO == record[0]) {
+        reply = connection.sendNoAck(pdu.getAction(), pdu.getBody());
+      } else {
+        reply = connection.send(pdu.getAction(), pdu.getBody(),
+            REPLY_TYPES.get(pdu.getAction()));
+      }
+    } catch (Exception ex) {
+      reply = Futures.immediateFailedFuture(ex);
+    }
+    Futures.addCallback(reply, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {
+        onReply(generation, entry, result, null);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        onReply(generation, entry, null, t);
+      }
+    });
+  }
+
+  private void onReply(long generation, Entry entry, Object result, Throwable t) {
+    synchronized (this) {
+      if (generation != mGeneration) {
+        return;
+      }
+      if (null != t && !(t instanceof PduException)) {
+        if (t instanceof CancellationException) {
+          // the connection is closed, the request is sent again on the next connection
+          return;
+        }
+        entry.mAttempts++;
+        if (entry.mAttempts < MAX_ATTEMPTS) {
+          LOG.warn("Unable to replay offline request, sending it again", t);
+          send(mConnection, entry, entry.mRecord);
+          return;
+        }
+        LOG.error("Unable to replay offline request, dropping it", t);
+      }
+      entry.mIsDone = true;
+      entry.mResult = result;
+      entry.mError = t;
+    }
+    pump();
+  }
+
+  // guarded by this
+  private void collectCompleted(List<Completion> completions) {
+    // records are committed in order, so a reply to a later request waits for earlier ones
+    while (!mSent.isEmpty() && mSent.peek().mIsDone) {
+      Entry entry = mSent.poll();
+      entry.mRecord = null;
+      mLog.commit();
+      completions.add(new Completion(entry));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> ListenableFuture<Pdu<T>> cast(ListenableFuture<Object> future) {
+    return (ListenableFuture<Pdu<T>>) (ListenableFuture<?>) future;
+  }
+
+  private static class Entry {
+    final SettableFuture<Object> mFuture;
+    byte[] mRecord;
+    int mAttempts;
+    boolean mIsDone;
+    Object mResult;
+    Throwable mError;
+
+    Entry(SettableFuture<Object> future) {
+      this.mFuture = future;
+    }
+  }
+
+  private static class Completion implements Runnable {
+    private final Entry mEntry;
+
+    Completion(Entry entry) {
+      this.mEntry = entry;
+    }
+
+    @Override
+    public void run() {
+      if (null == mEntry.mFuture) {
+        if (null != mEntry.mError) {
+          LOG.warn("Offline request of the previous run failed", mEntry.mError);
+        }
+        return;
+      }
+      if (null != mEntry.mError) {
+        mEntry.mFuture.setException(mEntry.mError);
+      } else {
+        mEntry.mFuture.set(mEntry.mResult);
+      }
+    }
+  }
+}
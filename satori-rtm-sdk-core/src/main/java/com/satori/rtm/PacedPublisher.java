@@ -0,0 +1,360 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import com.satori.rtm.utils.FutureUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes messages with {@link Ack#YES} while keeping a bounded number of publishes waiting
+ * for acknowledgement.
+ * <p>
+ * Messages passed to {@link #publish(PublishRequest)} are queued and sent to RTM only while fewer
+ * than {@link #getWindow()} publishes are unacknowledged. The window is adjusted from the observed
+ * acknowledgement round-trip time (RTT) in the AIMD style: it grows by one message per window of
+ * acknowledgements that arrive within {@code targetRttMillis}, and it's halved, at most once per
+ * RTT, when an acknowledgement is late or a publish fails.
+ * <p>
+ * The queue of messages that aren't sent yet is bounded, see
+ * {@link #setMaxQueued(int, PendingActionEvictionPolicy)}. When the queue is full, either the new
+ * message or the oldest queued one fails with an {@link IllegalStateException}.
+ * <p>
+ * For example:
+ * <pre>
+ * PacedPublisher publisher = new PacedPublisher(client, 1, 1000, 200);
+ * for (String message : messages) {
+ *   publisher.publish(new PublishRequest&lt;String&gt;("my_channel", message));
+ * }
+ * </pre>
+ */
+public class PacedPublisher {
+  private static final double RTT_GAIN = 0.125;
+  private static final double THROUGHPUT_GAIN = 0.5;
+  private static final long THROUGHPUT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int DEFAULT_MAX_QUEUED = 10000;
+
+  private final RtmClient mClient;
+  private final int mMinWindow;
+  private final int mMaxWindow;
+  private final long mTargetRttNanos;
+  private final Ticker mTicker;
+  private final Object mLock = new Object();
+  private final AtomicInteger mWip = new AtomicInteger();
+  // guarded by mLock
+  private final Queue<PendingPublish> mQueue = new ArrayDeque<PendingPublish>();
+  private int mMaxQueued = DEFAULT_MAX_QUEUED;
+  private PendingActionEvictionPolicy mEvictionPolicy = PendingActionEvictionPolicy.REJECT_NEW;
+  private long mDroppedCount;
+  private double mWindow;
+  private int mOutstanding;
+  private double mSmoothedRttNanos;
+  private boolean mIsDecreased;
+  private long mLastDecreaseNanos;
+  private long mAckedCount;
+  private long mFailedCount;
+  private long mPeriodStartNanos;
+  private long mPeriodAckedCount;
+  private double mThroughput;
+
+  /**
+   * Creates a paced publisher.
+   *
+   * @param client          RTM client to publish the messages
+   * @param minWindow       minimum number of unacknowledged publishes, the initial window
+   * @param maxWindow       maximum number of unacknowledged publishes
+   * @param targetRttMillis acknowledgement RTT in milliseconds above which the window shrinks
+   */
+  public PacedPublisher(RtmClient client, int minWindow, int maxWindow, long targetRttMillis) {
+    this(client, minWindow, maxWindow, targetRttMillis, Ticker.systemTicker());
+  }
+
+  PacedPublisher(RtmClient client, int minWindow, int maxWindow, long targetRttMillis,
+                 Ticker ticker) {
+    checkArgument(0 < minWindow && minWindow <= maxWindow,
+        "Window bounds are invalid: [%s, %s]", minWindow, maxWindow);
+    checkArgument(0 < targetRttMillis, "Target RTT must be positive: %s", targetRttMillis);
+    this.mClient = checkNotNull(client);
+    this.mMinWindow = minWindow;
+    this.mMaxWindow = maxWindow;
+    this.mTargetRttNanos = TimeUnit.MILLISECONDS.toNanos(targetRttMillis);
+    this.mTicker = checkNotNull(ticker);
+    this.mWindow = minWindow;
+    this.mPeriodStartNanos = ticker.read();
+  }
+
+  /**
+   * Sets the maximum number of messages that are queued and not sent yet, and what happens to a
+   * new message when the queue is full. The default is {@value #DEFAULT_MAX_QUEUED} messages and
+   * {@link PendingActionEvictionPolicy#REJECT_NEW}.
+   *
+   * @param maxQueued      maximum number of queued messages
+   * @param evictionPolicy what happens to a new message when the queue is full
+   * @return the current {@code PacedPublisher} object
+   */
+  public PacedPublisher setMaxQueued(int maxQueued, PendingActionEvictionPolicy evictionPolicy) {
+    checkArgument(0 < maxQueued, "Queue size must be positive: %s", maxQueued);
+    checkNotNull(evictionPolicy);
+    synchronized (mLock) {
+      this.mMaxQueued = maxQueued;
+      this.mEvictionPolicy = evictionPolicy;
+    }
+    return this;
+  }
+
+  /**
+   * Queues a message for publishing.
+   * <p>
+   * The returned {@link ListenableFuture} completes when RTM acknowledges the publish, the same
+   * way as the one returned by {@link RtmClient#publish(PublishRequest, Ack)}. If the queue is
+   * full, the future of the new or the oldest queued message fails with an
+   * {@link IllegalStateException}, see {@link #setMaxQueued(int, PendingActionEvictionPolicy)}.
+   *
+   * @param request publish request
+   * @param <T>     type of the message parameters
+   * @return a {@link PublishReply}
+   */
+  public <T> ListenableFuture<Pdu<PublishReply>> publish(PublishRequest<T> request) {
+    checkNotNull(request);
+    SettableFuture<Pdu<PublishReply>> future = SettableFuture.create();
+    List<PendingPublish> dropped = new ArrayList<PendingPublish>();
+    int maxQueued;
+    synchronized (mLock) {
+      maxQueued = mMaxQueued;
+      PendingPublish pending = new PendingPublish(request, future);
+      if (PendingActionEvictionPolicy.DROP_OLDEST == mEvictionPolicy) {
+        while (mQueue.size() >= mMaxQueued) {
+          dropped.add(mQueue.poll());
+        }
+        mQueue.add(pending);
+      } else if (mQueue.size() >= mMaxQueued) {
+        dropped.add(pending);
+      } else {
+        mQueue.add(pending);
+      }
+      mDroppedCount += dropped.size();
+    }
+    // the futures are failed outside the lock, their callbacks may publish again
+    for (PendingPublish pending : dropped) {
+      pending.mFuture.setException(new IllegalStateException(
+          "Publish queue is full: " + maxQueued + " messages"));
+    }
+    drain();
+    return future;
+  }
+
+  /**
+   * Returns the current number of publishes that may wait for acknowledgement.
+   *
+   * @return current window
+   */
+  public int getWindow() {
+    synchronized (mLock) {
+      return (int) mWindow;
+    }
+  }
+
+  /**
+   * Returns the number of publishes that are sent and not acknowledged yet.
+   *
+   * @return number of outstanding publishes
+   */
+  public int getOutstanding() {
+    synchronized (mLock) {
+      return mOutstanding;
+    }
+  }
+
+  /**
+   * Returns the number of messages that are queued and not sent yet.
+   *
+   * @return number of queued messages
+   */
+  public int getQueued() {
+    synchronized (mLock) {
+      return mQueue.size();
+    }
+  }
+
+  /**
+   * Returns the number of messages that failed because the queue was full.
+   *
+   * @return number of dropped messages
+   */
+  public long getDroppedCount() {
+    synchronized (mLock) {
+      return mDroppedCount;
+    }
+  }
+
+  /**
+   * Returns the smoothed acknowledgement round-trip time.
+   *
+   * @return acknowledgement RTT in milliseconds, or zero if nothing is acknowledged yet
+   */
+  public double getAckRttMillis() {
+    synchronized (mLock) {
+      return mSmoothedRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+
+  /**
+   * Returns the smoothed rate of acknowledged publishes.
+   *
+   * @return acknowledged publishes per second
+   */
+  public double getThroughput() {
+    synchronized (mLock) {
+      updateThroughput(mTicker.read());
+      return mThroughput;
+    }
+  }
+
+  /**
+   * Returns the number of publishes acknowledged by RTM.
+   *
+   * @return number of acknowledged publishes
+   */
+  public long getAckedCount() {
+    synchronized (mLock) {
+      return mAckedCount;
+    }
+  }
+
+  /**
+   * Returns the number of failed publishes.
+   *
+   * @return number of failed publishes
+   */
+  public long getFailedCount() {
+    synchronized (mLock) {
+      return mFailedCount;
+    }
+  }
+
+  private void drain() {
+    if (0 != mWip.getAndIncrement()) {
+      return;
+    }
+    int missed = 1;
+    while (true) {
+      while (true) {
+        PendingPublish next;
+        synchronized (mLock) {
+          if (mOutstanding >= (int) mWindow || mQueue.isEmpty()) {
+            break;
+          }
+          next = mQueue.poll();
+          mOutstanding++;
+        }
+        send(next);
+      }
+      missed = mWip.addAndGet(-missed);
+      if (0 == missed) {
+        return;
+      }
+    }
+  }
+
+  private void send(PendingPublish pending) {
+    final long sentNanos = mTicker.read();
+    ListenableFuture<Pdu<PublishReply>> reply;
+    try {
+      reply = mClient.publish(pending.mRequest, Ack.YES);
+    } catch (RuntimeException ex) {
+      reply = Futures.immediateFailedFuture(ex);
+    }
+    Futures.addCallback(reply, new FutureCallback<Pdu<PublishReply>>() {
+      @Override
+      public void onSuccess(Pdu<PublishReply> result) {
+        onAck(sentNanos);
+        drain();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        onFailed(t);
+        drain();
+      }
+    });
+    FutureUtils.delegateTo(reply, pending.mFuture);
+  }
+
+  private void onAck(long sentNanos) {
+    long now = mTicker.read();
+    long rtt = now - sentNanos;
+    synchronized (mLock) {
+      mOutstanding--;
+      mAckedCount++;
+      mPeriodAckedCount++;
+      updateThroughput(now);
+      mSmoothedRttNanos = (0 == mSmoothedRttNanos)
+          ? rtt
+          : (1 - RTT_GAIN) * mSmoothedRttNanos + RTT_GAIN * rtt;
+      if (rtt > mTargetRttNanos) {
+        decreaseWindow(now);
+      } else {
+        // additive increase: one message per window of timely acknowledgements
+        mWindow = Math.min(mMaxWindow, mWindow + 1.0 / mWindow);
+      }
+    }
+  }
+
+  private void onFailed(Throwable t) {
+    synchronized (mLock) {
+      mOutstanding--;
+      mFailedCount++;
+      if (!(t instanceof CancellationException)) {
+        decreaseWindow(mTicker.read());
+      }
+    }
+  }
+
+  private void decreaseWindow(long now) {
+    // shrink at most once per RTT, late acknowledgements of one burst are a single signal
+    long holdNanos = Math.max((long) mSmoothedRttNanos, mTargetRttNanos);
+    if (mIsDecreased && now - mLastDecreaseNanos < holdNanos) {
+      return;
+    }
+    mIsDecreased = true;
+    mLastDecreaseNanos = now;
+    mWindow = Math.max(mMinWindow, mWindow / 2);
+  }
+
+  private void updateThroughput(long now) {
+    long elapsed = now - mPeriodStartNanos;
+    if (elapsed < THROUGHPUT_PERIOD_NANOS) {
+      return;
+    }
+    double rate = mPeriodAckedCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    mThroughput = (0 == mThroughput)
+        ? rate
+        : (1 - THROUGHPUT_GAIN) * mThroughput + THROUGHPUT_GAIN * rate;
+    mPeriodStartNanos = now;
+    mPeriodAckedCount = 0;
+  }
+
+  private static class PendingPublish {
+    final PublishRequest<?> mRequest;
+    final SettableFuture<Pdu<PublishReply>> mFuture;
+
+    PendingPublish(PublishRequest<?> request, SettableFuture<Pdu<PublishReply>> future) {
+      this.mRequest = request;
+      this.mFuture = future;
+    }
+  }
+}
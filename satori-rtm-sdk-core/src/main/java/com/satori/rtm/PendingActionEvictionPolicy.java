@@ -0,0 +1,21 @@
+package com.satori.rtm;
+
+/**
+ * Determines what happens to an action performed while the client is offline and the offline
+ * queue is full, or to a message published while the queue of a {@link PacedPublisher} is full.
+ *
+ * @see RtmClientBuilder#setPendingActionQueueMaxBytes(long, PendingActionEvictionPolicy)
+ * @see PacedPublisher#setMaxQueued(int, PendingActionEvictionPolicy)
+ */
+public enum PendingActionEvictionPolicy {
+  /**
+   * Fails the new action with an {@link IllegalStateException}.
+   */
+  REJECT_NEW,
+
+  /**
+   * Fails the oldest queued actions with an {@link IllegalStateException} until the new action
+   * fits in the queue.
+   */
+  DROP_OLDEST
+}
@@ -0,0 +1,164 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Ticker;
+import com.google.common.base.Utf8;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Offline queue of actions that are performed when the client connects.
+ *
+ * The queue is limited by the number of actions and, if a serializer is set, by the total size of
+ * their serialized payloads. When a new action doesn't fit, the eviction policy decides whether
+ * the new action or the oldest ones are dropped. An action that waits longer than the timeout is
+ * dropped without being performed. Dropped actions are reported through their futures.
+ *
+ * The queue isn't thread-safe, RtmService accesses it under its queue lock. The futures of dropped
+ * actions aren't failed by the queue: their failures are collected and run by RtmService after it
+ * releases the lock, so callbacks of the futures can add new actions.
+ */
+class PendingQueue {
+  private final static Logger LOG = LoggerFactory.getLogger(PendingQueue.class);
+
+  private final Deque<Entry> mEntries = new ArrayDeque<Entry>();
+  private final int mMaxActions;
+  private final long mMaxBytes;
+  private final PendingActionEvictionPolicy mPolicy;
+  private final long mTimeoutNanos;
+  private final Serializer mSerializer;
+  private final Ticker mTicker;
+  private long mBytes = 0;
+
+  PendingQueue(int maxActions) {
+    this(maxActions, 0, PendingActionEvictionPolicy.REJECT_NEW, 0, null, Ticker.systemTicker());
+  }
+
+  /*
+   * maxBytes and timeoutMillis of zero disable the corresponding limit. The serializer is
+   * required only when maxBytes is set.
+   */
+  PendingQueue(int maxActions, long maxBytes, PendingActionEvictionPolicy policy,
+               long timeoutMillis, Serializer serializer, Ticker ticker) {
+    this.mMaxActions = maxActions;
+    this.mMaxBytes = maxBytes;
+    this.mPolicy = checkNotNull(policy);
+    this.mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.mSerializer = (0 < maxBytes) ? checkNotNull(serializer) : null;
+    this.mTicker = checkNotNull(ticker);
+  }
+
+  /**
+   * Adds the action to the queue, dropping the oldest actions if the policy allows it.
+   *
+   * @param action  action to perform when the client connects
+   * @param payload payload of the action, used to estimate its size
+   * @param future  future of the action, failed if the action is dropped
+   * @param dropped failures of the dropped actions, to run outside the queue lock
+   * @throws IllegalStateException if the action doesn't fit in the queue
+   */
+  void add(Runnable action, Object payload, SettableFuture<?> future, List<Runnable> dropped) {
+    expire(dropped);
+    long size = (null != mSerializer) ? Utf8.encodedLength(mSerializer.toJson(payload)) : 0;
+    if (0 < mMaxBytes && size > mMaxBytes) {
+      throw new IllegalStateException(String.format(
+          "Action of %d bytes exceeds the offline queue limit of %d bytes", size, mMaxBytes));
+    }
+    while (!fits(size)) {
+      if (PendingActionEvictionPolicy.REJECT_NEW == mPolicy) {
+        throw new IllegalStateException("Queue full");
+      }
+      Entry oldest = mEntries.poll();
+      mBytes -= oldest.mSize;
+      dropped.add(new Failure(oldest.mFuture,
+          new IllegalStateException("Action is evicted from the full offline queue")));
+    }
+    long deadline = (0 < mTimeoutNanos) ? mTicker.read() + mTimeoutNanos : 0;
+    mEntries.add(new Entry(action, size, deadline, future));
+    mBytes += size;
+  }
+
+  /**
+   * Removes the oldest action that hasn't expired from the queue. Expired actions are dropped.
+   *
+   * @param dropped failures of the expired actions, to run outside the queue lock
+   * @return the oldest action or {@code null} if the queue is empty
+   */
+  Runnable poll(List<Runnable> dropped) {
+    expire(dropped);
+    Entry entry = mEntries.poll();
+    if (null == entry) {
+      return null;
+    }
+    mBytes -= entry.mSize;
+    return entry.mAction;
+  }
+
+  int size() {
+    return mEntries.size();
+  }
+
+  long getBytes() {
+    return mBytes;
+  }
+
+  private boolean fits(long size) {
+    return mEntries.size() < mMaxActions && (0 == mMaxBytes || mBytes + size <= mMaxBytes);
+  }
+
+  private void expire(List<Runnable> dropped) {
+    if (0 == mTimeoutNanos) {
+      return;
+    }
+    long now = mTicker.read();
+    int expired = 0;
+    // all actions have the same timeout, so the oldest ones expire first
+    while (!mEntries.isEmpty() && now - mEntries.peek().mDeadline >= 0) {
+      Entry entry = mEntries.poll();
+      mBytes -= entry.mSize;
+      dropped.add(new Failure(entry.mFuture,
+          new TimeoutException("Action has expired in the offline queue")));
+      expired++;
+    }
+    if (0 < expired) {
+      LOG.debug("Dropped {} expired pending actions", expired);
+    }
+  }
+
+  private static class Entry {
+    final Runnable mAction;
+    final long mSize;
+    final long mDeadline;
+    final SettableFuture<?> mFuture;
+
+    Entry(Runnable action, long size, long deadline, SettableFuture<?> future) {
+      this.mAction = action;
+      this.mSize = size;
+      this.mDeadline = deadline;
+      this.mFuture = future;
+    }
+  }
+
+  private static class Failure implements Runnable {
+    private final SettableFuture<?> mFuture;
+    private final Exception mException;
+
+    Failure(SettableFuture<?> future, Exception exception) {
+      this.mFuture = future;
+      this.mException = exception;
+    }
+
+    @Override
+    public void run() {
+      mFuture.setException(mException);
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.satori.rtm;
 
+import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.satori.rtm.model.Pdu;
 import com.satori.rtm.model.PduRaw;
@@ -10,31 +12,101 @@ import com.satori.rtm.model.PublishRequest;
 import com.satori.rtm.model.SubscriptionData;
 import com.satori.rtm.model.SubscriptionError;
 import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.storage.CheckpointStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 class PubSub {
+  private final static Logger LOG = LoggerFactory.getLogger(PubSub.class);
   private final Map<String, ChannelSubscription> mSubscriptions;
   private final Set<String> mSubIds;
   private final RtmService mRtmService;
   private ExecutorService mDispatcher;
+  private SubscriptionLanes mLanes;
+  private ResubscriptionScheduler mResubscriber;
+  private CheckpointStore mCheckpoints;
 
   PubSub(RtmService rtmService, ExecutorService dispatcher) {
     this.mDispatcher = dispatcher;
     this.mRtmService = rtmService;
-    this.mSubscriptions = new HashMap<String, ChannelSubscription>();
+    // read by getSubscriptionStats() on any thread, modified on the dispatcher thread
+    this.mSubscriptions = new ConcurrentHashMap<String, ChannelSubscription>();
     this.mSubIds = Sets.newConcurrentHashSet();
+    this.mResubscriber = new ResubscriptionScheduler();
   }
 
-  void onConnected() {
+  void setDispatchLanes(SubscriptionLanes lanes) {
+    this.mLanes = lanes;
+  }
+
+  void setCheckpointStore(CheckpointStore checkpoints) {
+    this.mCheckpoints = checkpoints;
+  }
+
+  void setResubscriptionScheduler(ResubscriptionScheduler resubscriber) {
+    this.mResubscriber = resubscriber;
+  }
+
+  SubscriptionStats getSubscriptionStats(String subscriptionId) {
+    ChannelSubscription fsm = mSubscriptions.get(subscriptionId);
+    return (null != fsm) ? fsm.getSubscriptionConfig().getStats() : null;
+  }
+
+  Map<String, SubscriptionStats> getSubscriptionStats() {
+    Map<String, SubscriptionStats> stats = new HashMap<String, SubscriptionStats>();
     for (Map.Entry<String, ChannelSubscription> entry : mSubscriptions.entrySet()) {
-      entry.getValue().onConnected();
+      stats.put(entry.getKey(), entry.getValue().getSubscriptionConfig().getStats());
+    }
+    return stats;
+  }
+
+  long getLastResubscriptionMillis() {
+    return mResubscriber.getLastResubscriptionMillis();
+  }
+
+  /*
+   * Returns the listener that the subscription state machine should call. If dispatch lanes are
+   * enabled, the user callbacks are moved to the lane of the subscription.
+   */
+  SubscriptionListener dispatchListener(String subscriptionId, SubscriptionConfig config) {
+    SubscriptionListener listener = config.getUserListener();
+    if (null == mLanes) {
+      if (config.isPartitionedByChannel()) {
+        LOG.warn("Dispatch lanes are disabled, data of subscription {} isn't partitioned",
+            subscriptionId);
+      }
+      if (null != config.getConflationKeyExtractor()) {
+        LOG.warn("Dispatch lanes are disabled, data of subscription {} isn't conflated",
+            subscriptionId);
+      }
+      return listener;
+    }
+    SubscriptionLanes dataLanes = config.isPartitionedByChannel() ? mLanes : null;
+    return new LaneSubscriptionListener(config, mLanes.laneFor(subscriptionId), dataLanes);
+  }
+
+  List<Integer> getDispatchLaneQueueDepths() {
+    if (null == mLanes) {
+      return Collections.emptyList();
     }
+    return mLanes.getQueueDepths();
+  }
+
+  void onConnected() {
+    mResubscriber.onConnected(new ArrayList<ChannelSubscription>(mSubscriptions.values()));
   }
 
   void onDisconnected() {
+    mResubscriber.onDisconnected();
     for (Map.Entry<String, ChannelSubscription> entry : mSubscriptions.entrySet()) {
       entry.getValue().onDisconnected();
     }
@@ -53,6 +125,10 @@ class PubSub {
       @Override
       public void run() {
         mSubIds.add(subscriptionId);
+        // loaded on the dispatcher, so a pending removal of the same id drops its position first
+        if (null != mCheckpoints) {
+          config.attachCheckpointStore(subscriptionId, mCheckpoints);
+        }
         ChannelSubscription fsm = mSubscriptions.get(subscriptionId);
         if (null == fsm) {
           fsm = new ChannelSubscription(subscriptionId, config, mRtmService);
@@ -78,6 +154,7 @@ class PubSub {
       public void run() {
         ChannelSubscription fsm = mSubscriptions.get(subscriptionId);
         fsm.unsubscribe();
+        fsm.getSubscriptionConfig().detachCheckpointStore();
       }
     });
   }
@@ -102,26 +179,93 @@ class PubSub {
     return mRtmService.send("rtm/publish", request, ack, PublishReply.class);
   }
 
+  <T> ListenableFuture<PublishBatchResult> publishBatch(
+      final Collection<PublishRequest<T>> requests, final Ack ack) {
+    List<PublishRequest<T>> batch = new ArrayList<PublishRequest<T>>(requests);
+    return Futures.transform(mRtmService.sendBatch("rtm/publish", batch, ack, PublishReply.class),
+        new Function<List<ListenableFuture<Pdu<PublishReply>>>, PublishBatchResult>() {
+          @Override
+          public PublishBatchResult apply(List<ListenableFuture<Pdu<PublishReply>>> replies) {
+            return PublishBatchResult.of(replies);
+          }
+        });
+  }
+
   void onUnsolicitedPDU(PduRaw unsolicitedPdu) {
-    String action = unsolicitedPdu.getAction();
-
-    if ("rtm/subscription/error".equals(action)) {
-      Pdu<SubscriptionError> pdu = unsolicitedPdu.convertBodyTo(SubscriptionError.class);
-      SubscriptionError body = pdu.getBody();
-      String id = body.getSubscriptionId();
-      ChannelSubscription fsm = mSubscriptions.get(id);
-      fsm.onSubscriptionError(pdu);
-    } else if ("rtm/subscription/data".equals(action)) {
-      Pdu<SubscriptionData> pdu = unsolicitedPdu.convertBodyTo(SubscriptionData.class);
-      String id = pdu.getBody().getSubscriptionId();
-      ChannelSubscription fsm = mSubscriptions.get(id);
-      fsm.onSubscriptionData(pdu);
-    } else if ("rtm/subscription/info".equals(action)) {
-      Pdu<SubscriptionInfo> pdu = unsolicitedPdu.convertBodyTo(SubscriptionInfo.class);
-      SubscriptionInfo body = pdu.getBody();
-      String id = body.getSubscriptionId();
-      ChannelSubscription fsm = mSubscriptions.get(id);
-      fsm.onChannelInfo(pdu);
+    UnsolicitedAction action = UnsolicitedAction.of(unsolicitedPdu.getAction());
+    if (null == action) {
+      LOG.debug("Unsolicited PDU with action {} is ignored", unsolicitedPdu.getAction());
+      return;
+    }
+
+    switch (action) {
+      case SUBSCRIPTION_DATA: {
+        Pdu<SubscriptionData> pdu = unsolicitedPdu.convertBodyTo(SubscriptionData.class);
+        ChannelSubscription fsm = findSubscription(pdu.getBody().getSubscriptionId(), action);
+        if (null != fsm) {
+          fsm.onSubscriptionData(pdu);
+        }
+        break;
+      }
+      case SUBSCRIPTION_ERROR: {
+        Pdu<SubscriptionError> pdu = unsolicitedPdu.convertBodyTo(SubscriptionError.class);
+        ChannelSubscription fsm = findSubscription(pdu.getBody().getSubscriptionId(), action);
+        if (null != fsm) {
+          fsm.onSubscriptionError(pdu);
+        }
+        break;
+      }
+      case SUBSCRIPTION_INFO: {
+        Pdu<SubscriptionInfo> pdu = unsolicitedPdu.convertBodyTo(SubscriptionInfo.class);
+        ChannelSubscription fsm = findSubscription(pdu.getBody().getSubscriptionId(), action);
+        if (null != fsm) {
+          fsm.onChannelInfo(pdu);
+        }
+        break;
+      }
+    }
+  }
+
+  private ChannelSubscription findSubscription(String subscriptionId, UnsolicitedAction action) {
+    ChannelSubscription fsm = (null != subscriptionId) ? mSubscriptions.get(subscriptionId) : null;
+    if (null == fsm) {
+      // the subscription can be removed while its PDUs are still on the way
+      LOG.warn("Subscription {} doesn't exist, {} PDU is ignored", subscriptionId,
+          action.getAction());
+    }
+    return fsm;
+  }
+
+  /*
+   * Actions of the unsolicited PDUs that are routed to subscriptions.
+   */
+  enum UnsolicitedAction {
+    SUBSCRIPTION_DATA("rtm/subscription/data"),
+    SUBSCRIPTION_ERROR("rtm/subscription/error"),
+    SUBSCRIPTION_INFO("rtm/subscription/info");
+
+    private static final Map<String, UnsolicitedAction> BY_ACTION;
+
+    static {
+      Map<String, UnsolicitedAction> byAction = new HashMap<String, UnsolicitedAction>();
+      for (UnsolicitedAction value : values()) {
+        byAction.put(value.mAction, value);
+      }
+      BY_ACTION = Collections.unmodifiableMap(byAction);
+    }
+
+    private final String mAction;
+
+    UnsolicitedAction(String action) {
+      this.mAction = action;
+    }
+
+    String getAction() {
+      return mAction;
+    }
+
+    static UnsolicitedAction of(String action) {
+      return (null != action) ? BY_ACTION.get(action) : null;
     }
   }
 }
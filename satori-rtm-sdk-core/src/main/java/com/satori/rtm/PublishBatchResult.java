@@ -0,0 +1,86 @@
+package com.satori.rtm;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PublishReply;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Combined result of publishing a batch of messages.
+ * <p>
+ * Every message of the batch either has a reply in {@link #getReplies()} or an error in
+ * {@link #getErrors()}. A failure to publish one message doesn't affect the other messages.
+ *
+ * @see ExtendedRtmClient#publishBatch(java.util.Collection, Ack)
+ */
+public class PublishBatchResult {
+  private final List<PublishReply> mReplies;
+  private final Map<Integer, Throwable> mErrors;
+
+  PublishBatchResult(List<PublishReply> replies, Map<Integer, Throwable> errors) {
+    this.mReplies = Collections.unmodifiableList(replies);
+    this.mErrors = Collections.unmodifiableMap(errors);
+  }
+
+  /*
+   * Collects the replies of a batch from completed reply futures.
+   */
+  static PublishBatchResult of(List<ListenableFuture<Pdu<PublishReply>>> futures) {
+    List<PublishReply> replies = new ArrayList<PublishReply>(futures.size());
+    Map<Integer, Throwable> errors = new TreeMap<Integer, Throwable>();
+    for (int i = 0; i < futures.size(); i++) {
+      PublishReply reply = null;
+      try {
+        Pdu<PublishReply> pdu = Uninterruptibles.getUninterruptibly(futures.get(i));
+        reply = (null != pdu) ? pdu.getBody() : null;
+      } catch (ExecutionException ex) {
+        errors.put(i, ex.getCause());
+      } catch (CancellationException ex) {
+        errors.put(i, ex);
+      }
+      replies.add(reply);
+    }
+    return new PublishBatchResult(replies, errors);
+  }
+
+  /**
+   * Returns the reply of each message in the order of the requests. The reply is {@code null}
+   * if the message failed or wasn't acknowledged, see {@link Ack#NO}.
+   *
+   * @return list of replies, one per request
+   */
+  public List<PublishReply> getReplies() {
+    return mReplies;
+  }
+
+  /**
+   * Returns the errors of the messages that couldn't be published, by the index of the request.
+   * A negative reply of RTM is reported as {@link com.satori.rtm.model.PduException}.
+   *
+   * @return map from request index to error
+   */
+  public Map<Integer, Throwable> getErrors() {
+    return mErrors;
+  }
+
+  /**
+   * Returns {@code true} if any message couldn't be published.
+   *
+   * @return {@code true} if there are errors
+   */
+  public boolean hasErrors() {
+    return !mErrors.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "PublishBatchResult{replies=" + mReplies.size() + ", errors=" + mErrors + "}";
+  }
+}
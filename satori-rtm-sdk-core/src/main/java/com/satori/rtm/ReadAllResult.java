@@ -0,0 +1,56 @@
+package com.satori.rtm;
+
+import com.satori.rtm.model.ReadReply;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Combined result of reading several keys.
+ * <p>
+ * Every key of the request is either in {@link #getReplies()} or in {@link #getErrors()}. A
+ * failure to read one key doesn't affect the other keys.
+ *
+ * @see ExtendedRtmClient#readAll(java.util.Collection)
+ */
+public class ReadAllResult {
+  private final Map<String, ReadReply> mReplies;
+  private final Map<String, Throwable> mErrors;
+
+  ReadAllResult(Map<String, ReadReply> replies, Map<String, Throwable> errors) {
+    this.mReplies = Collections.unmodifiableMap(replies);
+    this.mErrors = Collections.unmodifiableMap(errors);
+  }
+
+  /**
+   * Returns the replies of the keys that were read successfully, in the order of the requests.
+   *
+   * @return map from key to read reply
+   */
+  public Map<String, ReadReply> getReplies() {
+    return mReplies;
+  }
+
+  /**
+   * Returns the errors of the keys that couldn't be read, in the order of the requests.
+   * A negative reply of RTM is reported as {@link com.satori.rtm.model.PduException}.
+   *
+   * @return map from key to error
+   */
+  public Map<String, Throwable> getErrors() {
+    return mErrors;
+  }
+
+  /**
+   * Returns {@code true} if any key couldn't be read.
+   *
+   * @return {@code true} if there are errors
+   */
+  public boolean hasErrors() {
+    return !mErrors.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "ReadAllResult{replies=" + mReplies.keySet() + ", errors=" + mErrors + "}";
+  }
+}
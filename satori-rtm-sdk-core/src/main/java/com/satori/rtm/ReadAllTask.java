@@ -0,0 +1,122 @@
+package com.satori.rtm;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.ReadReply;
+import com.satori.rtm.model.ReadRequest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Reads several keys with at most maxInFlight reads waiting for a reply at any moment, and
+ * combines the replies into a single result.
+ *
+ * A new read is sent as soon as a reply arrives, so the connection stays busy without flooding
+ * the pending queue or RTM with hundreds of requests at once.
+ */
+class ReadAllTask {
+  private final RtmService mService;
+  private final int mMaxInFlight;
+  private final SettableFuture<ReadAllResult> mResult = SettableFuture.create();
+  // guarded by this
+  private final Iterator<ReadRequest> mRequests;
+  private final Map<String, ReadReply> mReplies = new LinkedHashMap<String, ReadReply>();
+  private final Map<String, Throwable> mErrors = new LinkedHashMap<String, Throwable>();
+  private final List<String> mKeys = new ArrayList<String>();
+  private int mInFlight = 0;
+  private int mRemaining;
+  private boolean mIsSending = false;
+
+  ReadAllTask(RtmService service, List<ReadRequest> requests, int maxInFlight) {
+    this.mService = service;
+    this.mMaxInFlight = maxInFlight;
+    this.mRequests = requests.iterator();
+    this.mRemaining = requests.size();
+    for (ReadRequest request : requests) {
+      mKeys.add(request.getChannel());
+    }
+  }
+
+  ListenableFuture<ReadAllResult> start() {
+    if (0 == mRemaining) {
+      mResult.set(new ReadAllResult(mReplies, mErrors));
+      return mResult;
+    }
+    sendNext();
+    return mResult;
+  }
+
+  private void sendNext() {
+    synchronized (this) {
+      // replies that arrive synchronously are handled by the loop below, not by recursion
+      if (mIsSending) {
+        return;
+      }
+      mIsSending = true;
+    }
+    while (true) {
+      ReadRequest request;
+      synchronized (this) {
+        if (mResult.isCancelled() || mInFlight >= mMaxInFlight || !mRequests.hasNext()) {
+          mIsSending = false;
+          return;
+        }
+        request = mRequests.next();
+        mInFlight++;
+      }
+      final String key = request.getChannel();
+      ListenableFuture<Pdu<ReadReply>> reply;
+      try {
+        reply = mService.read(request);
+      } catch (Exception ex) {
+        reply = Futures.immediateFailedFuture(ex);
+      }
+      Futures.addCallback(reply, new FutureCallback<Pdu<ReadReply>>() {
+        @Override
+        public void onSuccess(Pdu<ReadReply> result) {
+          onReply(key, result.getBody(), null);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          onReply(key, null, t);
+        }
+      });
+    }
+  }
+
+  private void onReply(String key, ReadReply reply, Throwable error) {
+    boolean isDone;
+    synchronized (this) {
+      mInFlight--;
+      mRemaining--;
+      if (null != error) {
+        mErrors.put(key, error);
+      } else {
+        mReplies.put(key, reply);
+      }
+      isDone = (0 == mRemaining);
+    }
+    if (isDone) {
+      mResult.set(new ReadAllResult(ordered(mReplies), ordered(mErrors)));
+    } else {
+      sendNext();
+    }
+  }
+
+  private synchronized <T> Map<String, T> ordered(Map<String, T> values) {
+    Map<String, T> result = new LinkedHashMap<String, T>();
+    for (String key : mKeys) {
+      if (values.containsKey(key)) {
+        result.put(key, values.get(key));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,178 @@
+package com.satori.rtm;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Sends rtm/subscribe requests of existing subscriptions after a reconnect.
+ *
+ * Subscriptions with the TRACK_POSITION mode go first, because their positions may expire while
+ * they wait. If pacing is enabled, at most batchSize subscriptions are subscribed every
+ * interval and at most maxInFlight subscribe requests wait for a reply at any moment, so that
+ * a client with many subscriptions doesn't send all of them in a single burst.
+ *
+ * All methods except getLastResubscriptionMillis() must be called on the dispatcher thread.
+ */
+class ResubscriptionScheduler {
+  private final static Logger LOG = LoggerFactory.getLogger(ResubscriptionScheduler.class);
+
+  private final ExecutorService mDispatcher;
+  private final ScheduledExecutorService mScheduler;
+  private final int mBatchSize;
+  private final long mIntervalMillis;
+  private final int mMaxInFlight;
+  private final Ticker mTicker;
+  private final Deque<AbstractSubscription> mQueue = new ArrayDeque<AbstractSubscription>();
+  private long mGeneration = 0;
+  private int mInFlight = 0;
+  private boolean mIsSending = false;
+  private ScheduledFuture<?> mNextBatch;
+  private long mStartNanos = -1;
+  private volatile long mLastResubscriptionMillis = -1;
+
+  ResubscriptionScheduler() {
+    this(null, null, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, Ticker.systemTicker());
+  }
+
+  ResubscriptionScheduler(ExecutorService dispatcher, ScheduledExecutorService scheduler,
+                          int batchSize, long intervalMillis, int maxInFlight, Ticker ticker) {
+    this.mDispatcher = dispatcher;
+    this.mScheduler = scheduler;
+    this.mBatchSize = batchSize;
+    this.mIntervalMillis = intervalMillis;
+    this.mMaxInFlight = maxInFlight;
+    this.mTicker = ticker;
+  }
+
+  void onConnected(Collection<ChannelSubscription> subscriptions) {
+    cancel();
+    List<AbstractSubscription> others = new ArrayList<AbstractSubscription>();
+    for (ChannelSubscription subscription : subscriptions) {
+      if (subscription.isTrackingPosition()) {
+        mQueue.add(subscription);
+      } else {
+        others.add(subscription);
+      }
+    }
+    mQueue.addAll(others);
+    mStartNanos = mTicker.read();
+    sendBatch();
+  }
+
+  void onDisconnected() {
+    cancel();
+  }
+
+  long getLastResubscriptionMillis() {
+    return mLastResubscriptionMillis;
+  }
+
+  private void cancel() {
+    // replies and timers of the previous connection are ignored
+    mGeneration++;
+    mQueue.clear();
+    mInFlight = 0;
+    mStartNanos = -1;
+    if (null != mNextBatch) {
+      mNextBatch.cancel(false);
+      mNextBatch = null;
+    }
+  }
+
+  private void sendBatch() {
+    if (null != mNextBatch || mIsSending) {
+      return;
+    }
+    mIsSending = true;
+    int sent = 0;
+    try {
+      while (sent < mBatchSize && mInFlight < mMaxInFlight && !mQueue.isEmpty()) {
+        if (subscribe(mQueue.poll())) {
+          sent++;
+        }
+      }
+    } finally {
+      mIsSending = false;
+    }
+
+    if (mQueue.isEmpty()) {
+      if (0 == mInFlight && 0 <= mStartNanos) {
+        mLastResubscriptionMillis =
+            TimeUnit.NANOSECONDS.toMillis(mTicker.read() - mStartNanos);
+        mStartNanos = -1;
+        LOG.info("Resubscribed in {} ms", mLastResubscriptionMillis);
+      }
+      return;
+    }
+    if (sent < mBatchSize) {
+      // the in-flight limit is reached, the next reply continues resubscribing
+      return;
+    }
+    scheduleNextBatch();
+  }
+
+  private boolean subscribe(AbstractSubscription subscription) {
+    subscription.onConnected();
+    if (AbstractSubscription.SUBSCRIBING != subscription.getState()) {
+      return false;
+    }
+    ListenableFuture<?> request = subscription.getRequest();
+    if (null == request) {
+      return false;
+    }
+    mInFlight++;
+    final long generation = mGeneration;
+    Futures.addCallback(request, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {
+        onReply(generation);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        onReply(generation);
+      }
+    });
+    return true;
+  }
+
+  private void onReply(long generation) {
+    if (generation != mGeneration) {
+      return;
+    }
+    mInFlight--;
+    sendBatch();
+  }
+
+  private void scheduleNextBatch() {
+    final long generation = mGeneration;
+    mNextBatch = mScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        mDispatcher.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (generation != mGeneration) {
+              return;
+            }
+            mNextBatch = null;
+            sendBatch();
+          }
+        });
+      }
+    }, mIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+}
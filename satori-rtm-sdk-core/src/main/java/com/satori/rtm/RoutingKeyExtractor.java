@@ -0,0 +1,20 @@
+package com.satori.rtm;
+
+import com.satori.rtm.model.AnyJson;
+
+/**
+ * Extracts the key by which {@link ContentRouter} routes a message to a handler.
+ *
+ * @see FieldKeyExtractor
+ */
+public interface RoutingKeyExtractor {
+  /**
+   * Returns the routing key of the message.
+   * <p>
+   * The method is called on the SDK dispatcher thread for every message, so it should be fast.
+   *
+   * @param message message received in the subscription data
+   * @return routing key, or {@code null} if the message has no key
+   */
+  String getKey(AnyJson message);
+}
@@ -7,6 +7,8 @@ import com.satori.rtm.auth.AuthProvider;
 import com.satori.rtm.auth.RoleSecretAuthProvider;
 import com.satori.rtm.connection.ConnectionListener;
 import com.satori.rtm.connection.Serializer;
+import com.satori.rtm.storage.CheckpointStore;
+import com.satori.rtm.storage.SegmentLog;
 import com.satori.rtm.transport.AbstractTransportFactory;
 import com.satori.rtm.transport.Transport;
 import com.satori.rtm.transport.TransportFactory;
@@ -69,6 +71,9 @@ public class RtmClientBuilder {
   long mMinReconnectInterval = DEFAULT_MIN_RECONNECT_INTERVAL;
   long mMaxReconnectInterval = DEFAULT_MAX_RECONNECT_INTERVAL;
   int mPendingActionQueueLength = DEFAULT_PENDING_QUEUE_LENGTH;
+  long mPendingActionQueueMaxBytes = 0;
+  PendingActionEvictionPolicy mPendingActionEvictionPolicy = PendingActionEvictionPolicy.REJECT_NEW;
+  long mPendingActionTimeout = 0;
   ScheduledExecutorService mScheduledExecutorService;
   RtmClientListener mUserListener = new RtmClientAdapter() {};
   boolean mIsAutoReconnect = true;
@@ -77,6 +82,16 @@ public class RtmClientBuilder {
   Serializer mJsonSerializer;
   boolean mShouldDispatchTransport = true;
   ExecutorService mDispatcher;
+  int mSubscriptionDispatchLanes = 0;
+  boolean mIsVirtualThreadLanes = false;
+  int mParsingThreads = 0;
+  int mResubscribeBatchSize = 0;
+  long mResubscribeInterval = 0;
+  int mResubscribeMaxInFlight = 0;
+  CheckpointStore mCheckpointStore;
+  SegmentLog mOfflineLog;
+  int mOfflineReplayWindow = 0;
+  boolean mIsReadCoalescing = false;
   private int mConnectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
   private URI mProxyUri;
 
@@ -165,6 +180,17 @@ public class RtmClientBuilder {
    * @return RTM client
    */
   public RtmClient build() {
+    return buildExtended();
+  }
+
+  /**
+   * Builds an {@link ExtendedRtmClient} with the configured properties.
+   * <p>
+   * Call this method <strong>after</strong> you've set properties.
+   *
+   * @return RTM client with the additional operations of {@link ExtendedRtmClient}
+   */
+  public ExtendedRtmClient buildExtended() {
     if (null == mTransportFactory) {
       mTransportFactory = new WebSocketTransportFactory();
     }
@@ -232,6 +258,50 @@ public class RtmClientBuilder {
     return this;
   }
 
+  /**
+   * Limits the offline queue by the size of the queued actions.
+   * <p>
+   * The size of an action is the size of its JSON payload. When an action doesn't fit in the
+   * offline queue, either because of this limit or because of the queue length, the policy
+   * decides whether the new action or the oldest queued actions fail. An action that is larger
+   * than the limit always fails.
+   * <p>
+   * The payloads are serialized once more to measure them, only while the client is offline.
+   * By default, the offline queue isn't limited by size, and new actions fail when the queue is
+   * full.
+   *
+   * @param maxBytes maximum size of the queued actions in bytes, zero disables the limit
+   * @param policy   policy that applies when an action doesn't fit in the queue
+   * @return the current builder object
+   */
+  public RtmClientBuilder setPendingActionQueueMaxBytes(long maxBytes,
+                                                        PendingActionEvictionPolicy policy) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes can't be negative");
+    }
+    this.mPendingActionQueueMaxBytes = maxBytes;
+    this.mPendingActionEvictionPolicy = checkNotNull(policy);
+    return this;
+  }
+
+  /**
+   * Sets the maximum time an action waits in the offline queue.
+   * <p>
+   * An action that isn't performed within the timeout is dropped from the offline queue, and its
+   * future fails with {@link java.util.concurrent.TimeoutException}. This way stale publishes
+   * aren't sent after a long disconnect. By default, queued actions don't expire.
+   *
+   * @param timeoutMillis timeout in milliseconds, zero disables expiration
+   * @return the current builder object
+   */
+  public RtmClientBuilder setPendingActionTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("timeoutMillis can't be negative");
+    }
+    this.mPendingActionTimeout = timeoutMillis;
+    return this;
+  }
+
   /**
    * Sets the maximum time to wait between reconnection attempts.
    * <p>
@@ -382,6 +452,174 @@ public class RtmClientBuilder {
     return this;
   }
 
+  /**
+   * Sets the number of worker lanes that run subscription callbacks in parallel.
+   * <p>
+   * By default, the callbacks of all subscriptions run sequentially on the event dispatcher, so a
+   * slow {@link SubscriptionListener} delays the callbacks of every other subscription. When
+   * lanes are enabled, each subscription is assigned to one of {@code lanes} worker threads by its
+   * subscription id. Callbacks of a subscription still run sequentially and in order, but
+   * callbacks of subscriptions on different lanes run in parallel.
+   * <p>
+   * Use {@link ExtendedRtmClient#getDispatchLaneQueueDepths()} to see how many callbacks are waiting
+   * on each lane.
+   * <p>
+   * A value of zero disables the lanes. This is the default.
+   *
+   * @param lanes number of worker lanes
+   * @return the current builder object
+   */
+  public RtmClientBuilder setSubscriptionDispatchLanes(int lanes) {
+    return setSubscriptionDispatchLanes(lanes, false);
+  }
+
+  /**
+   * Sets the number of worker lanes that run subscription callbacks in parallel and whether the
+   * lanes run on virtual threads.
+   * <p>
+   * Virtual threads are available on JDK 21 and later. A virtual thread that blocks in a
+   * listener doesn't hold an OS thread, so you can afford a large number of lanes (for example,
+   * one lane per few subscriptions) when listeners perform blocking I/O. On older JVMs the RTM SDK
+   * logs a warning and uses platform threads.
+   *
+   * @param lanes          number of worker lanes
+   * @param virtualThreads {@code true} to run the lanes on virtual threads
+   * @return the current builder object
+   * @see #setSubscriptionDispatchLanes(int)
+   */
+  public RtmClientBuilder setSubscriptionDispatchLanes(int lanes, boolean virtualThreads) {
+    if (lanes < 0) {
+      throw new IllegalArgumentException("lanes can't be negative");
+    }
+    this.mSubscriptionDispatchLanes = lanes;
+    this.mIsVirtualThreadLanes = virtualThreads;
+    return this;
+  }
+
+  /**
+   * Sets the number of threads that parse incoming PDUs in parallel.
+   * <p>
+   * By default, each incoming message is parsed on the event dispatcher right before it's
+   * processed, so on a busy connection parsing takes a large share of the dispatcher time. When
+   * parsing threads are enabled, messages are parsed on {@code threads} worker threads while the
+   * dispatcher processes the PDUs that are already parsed. The PDUs are still processed in the
+   * order in which they were received.
+   * <p>
+   * A value of zero disables the parsing threads. This is the default.
+   *
+   * @param threads number of parsing threads
+   * @return the current builder object
+   */
+  public RtmClientBuilder setParsingThreads(int threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("threads can't be negative");
+    }
+    this.mParsingThreads = threads;
+    return this;
+  }
+
+  /**
+   * Paces the subscribe requests that the client sends after a reconnect.
+   * <p>
+   * By default, after the client reconnects to RTM, it sends the subscribe requests of all
+   * subscriptions at once. A client with thousands of subscriptions sends thousands of requests
+   * in a single burst, and if many clients reconnect at the same time, for example after a network
+   * outage, the bursts add up. When pacing is enabled, the client sends at most {@code batchSize}
+   * subscribe requests every {@code interval} milliseconds, and no more than
+   * {@code maxInFlight} requests wait for a reply at any moment.
+   * <p>
+   * Subscriptions with the {@link SubscriptionMode#TRACK_POSITION} mode are resubscribed first, so
+   * their positions are less likely to expire while they wait.
+   * <p>
+   * Use {@link ExtendedRtmClient#getLastResubscriptionTime()} to find out how long it took to resubscribe.
+   *
+   * @param batchSize   maximum number of subscribe requests sent at once
+   * @param interval    interval between batches, in milliseconds
+   * @param maxInFlight maximum number of subscribe requests waiting for a reply
+   * @return the current builder object
+   */
+  public RtmClientBuilder setResubscribePacing(int batchSize, long interval, int maxInFlight) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    if (interval < 0) {
+      throw new IllegalArgumentException("interval can't be negative");
+    }
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("maxInFlight must be positive");
+    }
+    this.mResubscribeBatchSize = batchSize;
+    this.mResubscribeInterval = interval;
+    this.mResubscribeMaxInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Sets the store that keeps the positions of subscriptions across application restarts.
+   * <p>
+   * Every subscription with the {@link SubscriptionMode#TRACK_POSITION} mode saves its position
+   * to the store each time the position changes. When such a subscription is created without an
+   * explicit position, it resumes from the position found in the store for its subscription id.
+   * <p>
+   * The client doesn't close the store, close it after the client is shut down.
+   *
+   * @param store checkpoint store
+   * @return the current builder object
+   * @see com.satori.rtm.storage.MappedFileCheckpointStore
+   */
+  public RtmClientBuilder setCheckpointStore(CheckpointStore store) {
+    this.mCheckpointStore = store;
+    return this;
+  }
+
+  /**
+   * Spools publish, write and delete requests to a disk log while the client is offline.
+   * <p>
+   * While the client is disconnected, these requests are appended to the log instead of the
+   * in-memory pending queue, so they survive a restart of the application. When the client
+   * connects, the requests are sent in the order in which they were made, and a request is
+   * removed from the log when RTM replies to it. Requests made during the replay are spooled
+   * after the replayed ones. The replay window limits the number of replayed requests that
+   * wait for a reply, and so the replay throughput.
+   * <p>
+   * If the connection is lost during the replay, the requests without a reply are sent again,
+   * so RTM may receive a request more than once. Requests recovered from the previous run of
+   * the application are replayed too, but their results are only logged. When the log exceeds
+   * its maximum size, new requests fail with {@code IllegalStateException}.
+   * <p>
+   * The client doesn't close the log, close it after the client is shut down.
+   *
+   * @param log          segment log to spool the requests to
+   * @param replayWindow maximum number of replayed requests that wait for a reply
+   * @return the current builder object
+   */
+  public RtmClientBuilder setOfflineSpool(SegmentLog log, int replayWindow) {
+    checkNotNull(log);
+    if (replayWindow <= 0) {
+      throw new IllegalArgumentException("replayWindow must be positive");
+    }
+    this.mOfflineLog = log;
+    this.mOfflineReplayWindow = replayWindow;
+    return this;
+  }
+
+  /**
+   * Enables merging of concurrent reads of the same key.
+   * <p>
+   * When enabled, a read of a channel and position that is already being read doesn't send
+   * another {@code rtm/read} request. It waits for the request in flight, and the reply is passed
+   * to all callers. This reduces the load when many threads read a hot key at once. A read that
+   * starts after the reply arrives sends a new request, so results are never older than the
+   * request in flight. Reads aren't merged by default.
+   *
+   * @param coalescing {@code true} to merge concurrent reads of the same key
+   * @return the current builder object
+   */
+  public RtmClientBuilder setReadCoalescing(boolean coalescing) {
+    this.mIsReadCoalescing = coalescing;
+    return this;
+  }
+
   /**
    * Sets the JSON serializer for the client.
    * <p>
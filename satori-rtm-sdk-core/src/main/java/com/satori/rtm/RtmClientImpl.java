@@ -1,8 +1,10 @@
 package com.satori.rtm;
 
+import com.google.common.base.Ticker;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.satori.rtm.auth.AuthException;
 import com.satori.rtm.auth.AuthProvider;
 import com.satori.rtm.connection.Connection;
@@ -22,17 +24,20 @@ import com.satori.rtm.model.WriteRequest;
 import com.satori.rtm.transport.TransportFactory;
 import com.satori.rtm.utils.FutureUtils;
 import com.satori.rtm.utils.TrampolineExecutorService;
-import com.satori.rtm.utils.TryCatchProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.net.URI;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
-class RtmClientImpl implements RtmClient {
+class RtmClientImpl implements ExtendedRtmClient {
   private static final Logger LOG = LoggerFactory.getLogger(RtmClient.class);
+  static final int DEFAULT_READ_ALL_WINDOW = 64;
   private final RtmClientStateMachine mClientFSM;
   private final RtmClientListener mUserListener;
   private final TransportFactory mTransportFactory;
@@ -42,6 +47,8 @@ class RtmClientImpl implements RtmClient {
   private final boolean mIsExtDispatcher;
   private final boolean mIsExtScheduler;
   private final RtmService mRtmService;
+  private final SubscriptionLanes mSubscriptionLanes;
+  private final ExecutorService mParsers;
   private ExecutorService mDispatcher;
   private Connection mConnection;
   private Serializer mJsonSerializer;
@@ -49,7 +56,7 @@ class RtmClientImpl implements RtmClient {
 
   public RtmClientImpl(final URI uri, final RtmClientBuilder opts) {
     this.mURI = uri;
-    this.mUserListener = TryCatchProxy.wrap(opts.mUserListener, RtmClientListener.class);
+    this.mUserListener = SafeRtmClientListener.wrap(opts.mUserListener);
     this.mAuthProvider = opts.mAuthProvider;
     this.mTransportFactory = opts.mTransportFactory;
     this.mJsonSerializer = opts.mJsonSerializer;
@@ -60,7 +67,32 @@ class RtmClientImpl implements RtmClient {
         mIsExtScheduler ? opts.mScheduledExecutorService : Executors.newScheduledThreadPool(1);
     this.mDispatcher = mIsExtDispatcher ? opts.mDispatcher : new TrampolineExecutorService();
     this.mShouldDispatchTransport = opts.mShouldDispatchTransport;
-    this.mRtmService = RtmService.create(opts.mPendingActionQueueLength, mDispatcher);
+    this.mRtmService = RtmService.create(createPendingQueue(opts), mDispatcher);
+    this.mSubscriptionLanes = (0 < opts.mSubscriptionDispatchLanes)
+        ? SubscriptionLanes.create(opts.mSubscriptionDispatchLanes, opts.mIsVirtualThreadLanes)
+        : null;
+    mRtmService.getPubSub().setDispatchLanes(mSubscriptionLanes);
+    mRtmService.getPubSub().setCheckpointStore(opts.mCheckpointStore);
+    mRtmService.setReadCoalescing(opts.mIsReadCoalescing);
+    if (null != opts.mOfflineLog) {
+      mRtmService.setOfflineSpool(
+          new OfflineSpool(opts.mOfflineLog, mJsonSerializer, opts.mOfflineReplayWindow));
+    }
+    if (0 < opts.mResubscribeBatchSize) {
+      mRtmService.getPubSub().setResubscriptionScheduler(new ResubscriptionScheduler(
+          mDispatcher,
+          mScheduledExecutorService,
+          opts.mResubscribeBatchSize,
+          opts.mResubscribeInterval,
+          opts.mResubscribeMaxInFlight,
+          Ticker.systemTicker()));
+    }
+    this.mParsers = (0 < opts.mParsingThreads)
+        ? Executors.newFixedThreadPool(opts.mParsingThreads, new ThreadFactoryBuilder()
+            .setNameFormat("rtm-parser-%d")
+            .setDaemon(true)
+            .build())
+        : null;
     this.mClientFSM = new RtmClientStateMachine(
         this,
         new RtmClientStateMachineListener(),
@@ -108,6 +140,12 @@ class RtmClientImpl implements RtmClient {
     if (!mIsExtDispatcher) {
       mDispatcher.shutdown();
     }
+    if (null != mSubscriptionLanes) {
+      mSubscriptionLanes.shutdown();
+    }
+    if (null != mParsers) {
+      mParsers.shutdown();
+    }
   }
 
   @Override
@@ -122,6 +160,12 @@ class RtmClientImpl implements RtmClient {
     return mRtmService.getPubSub().publish(request, ack);
   }
 
+  @Override
+  public <T> ListenableFuture<PublishBatchResult> publishBatch(
+      final Collection<PublishRequest<T>> requests, final Ack ack) {
+    return mRtmService.getPubSub().publishBatch(requests, ack);
+  }
+
 
   @Override
   public void createSubscription(String channel, EnumSet<SubscriptionMode> modes,
@@ -134,6 +178,13 @@ class RtmClientImpl implements RtmClient {
     mRtmService.getPubSub().createSubscription(channelOrSubId, config);
   }
 
+  @Override
+  public SubscriptionPublisher createSubscriptionPublisher(
+      String channel, EnumSet<SubscriptionMode> modes, int bufferSize,
+      SubscriptionPublisher.OverflowStrategy overflowStrategy) {
+    return new SubscriptionPublisher(this, channel, modes, bufferSize, overflowStrategy);
+  }
+
   @Override
   public void removeSubscription(final String subscriptionId) {
     mRtmService.getPubSub().removeSubscription(subscriptionId);
@@ -144,6 +195,26 @@ class RtmClientImpl implements RtmClient {
     return mClientFSM.isConnected();
   }
 
+  @Override
+  public List<Integer> getDispatchLaneQueueDepths() {
+    return mRtmService.getPubSub().getDispatchLaneQueueDepths();
+  }
+
+  @Override
+  public long getLastResubscriptionTime() {
+    return mRtmService.getPubSub().getLastResubscriptionMillis();
+  }
+
+  @Override
+  public SubscriptionStats getSubscriptionStats(String subscriptionId) {
+    return mRtmService.getPubSub().getSubscriptionStats(subscriptionId);
+  }
+
+  @Override
+  public Map<String, SubscriptionStats> getSubscriptionStats() {
+    return mRtmService.getPubSub().getSubscriptionStats();
+  }
+
   @Override
   public Connection getConnection() {
     return mConnection;
@@ -159,6 +230,17 @@ class RtmClientImpl implements RtmClient {
     return mRtmService.read(request);
   }
 
+  @Override
+  public ListenableFuture<ReadAllResult> readAll(Collection<ReadRequest> requests) {
+    return readAll(requests, DEFAULT_READ_ALL_WINDOW);
+  }
+
+  @Override
+  public ListenableFuture<ReadAllResult> readAll(Collection<ReadRequest> requests,
+                                                 int maxInFlight) {
+    return mRtmService.readAll(requests, maxInFlight);
+  }
+
   @Override
   public <T> ListenableFuture<Pdu<WriteReply>> write(String key, T value, Ack ack) {
     WriteRequest<T> writeRequest = new WriteRequest<T>(key, value);
@@ -184,6 +266,19 @@ class RtmClientImpl implements RtmClient {
     return mDispatcher;
   }
 
+  private static PendingQueue createPendingQueue(RtmClientBuilder opts) {
+    if (0 >= opts.mPendingActionQueueLength) {
+      return null;
+    }
+    return new PendingQueue(
+        opts.mPendingActionQueueLength,
+        opts.mPendingActionQueueMaxBytes,
+        opts.mPendingActionEvictionPolicy,
+        opts.mPendingActionTimeout,
+        opts.mJsonSerializer,
+        Ticker.systemTicker());
+  }
+
   private void connect() {
     try {
       mConnection = tryCreateConnection();
@@ -201,7 +296,7 @@ class RtmClientImpl implements RtmClient {
       );
       ConnectionListener listener = new InnerConnectionListener();
       ExecutorService transportDispatcher = mShouldDispatchTransport ? mDispatcher : null;
-      connection.connect(listener, transportDispatcher);
+      connection.connect(listener, transportDispatcher, mParsers);
       return connection;
     } catch (Exception ex) {
       mClientFSM.onConnectingFailed();
@@ -1,10 +1,12 @@
 package com.satori.rtm;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.satori.rtm.connection.Connection;
 import com.satori.rtm.model.DeleteReply;
@@ -18,9 +20,15 @@ import com.satori.rtm.model.WriteRequest;
 import com.satori.rtm.utils.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -29,18 +37,24 @@ import java.util.concurrent.atomic.AtomicReference;
 class RtmService {
   private final static Logger LOG = LoggerFactory.getLogger(RtmService.class);
   private final Object mQueueLock = new Object();
-  private final BlockingQueue<Runnable> mPendingQueue;
+  private final PendingQueue mPendingQueue;
   private final AtomicReference<Connection> mConnection;
   private PubSub mPubSub;
+  private OfflineSpool mOfflineSpool;
+  private volatile ConcurrentMap<List<String>, ListenableFuture<Pdu<ReadReply>>> mInFlightReads;
 
-  private RtmService(Integer pendingQueueLength) {
+  private RtmService(PendingQueue pendingQueue) {
     this.mConnection = new AtomicReference<Connection>(null);
-    this.mPendingQueue =
-        0 < pendingQueueLength ? new LinkedBlockingQueue<Runnable>(pendingQueueLength) : null;
+    this.mPendingQueue = pendingQueue;
   }
 
   public static RtmService create(Integer pendingQueueLength, ExecutorService dispatcher) {
-    RtmService service = new RtmService(pendingQueueLength);
+    return create(0 < pendingQueueLength ? new PendingQueue(pendingQueueLength) : null,
+        dispatcher);
+  }
+
+  public static RtmService create(PendingQueue pendingQueue, ExecutorService dispatcher) {
+    RtmService service = new RtmService(pendingQueue);
     service.setPubSub(new PubSub(service, dispatcher));
     return service;
   }
@@ -61,8 +75,52 @@ class RtmService {
     this.mPubSub = pubSub;
   }
 
+  void setOfflineSpool(OfflineSpool spool) {
+    this.mOfflineSpool = spool;
+  }
+
+  void setReadCoalescing(boolean enabled) {
+    this.mInFlightReads = enabled
+        ? new ConcurrentHashMap<List<String>, ListenableFuture<Pdu<ReadReply>>>()
+        : null;
+  }
+
   public ListenableFuture<Pdu<ReadReply>> read(ReadRequest request) {
-    return send("rtm/read", request, Ack.YES, ReadReply.class);
+    final ConcurrentMap<List<String>, ListenableFuture<Pdu<ReadReply>>> inFlightReads =
+        mInFlightReads;
+    if (null == inFlightReads) {
+      return send("rtm/read", request, Ack.YES, ReadReply.class);
+    }
+
+    // concurrent reads of the same channel and position share a single request
+    final List<String> key = Arrays.asList(request.getChannel(), request.getPosition());
+    final SettableFuture<Pdu<ReadReply>> shared = SettableFuture.create();
+    ListenableFuture<Pdu<ReadReply>> inFlight = inFlightReads.putIfAbsent(key, shared);
+    if (null == inFlight) {
+      inFlight = shared;
+      shared.addListener(new Runnable() {
+        @Override
+        public void run() {
+          inFlightReads.remove(key, shared);
+        }
+      }, MoreExecutors.directExecutor());
+      shared.setFuture(send("rtm/read", request, Ack.YES, ReadReply.class));
+    }
+    // every caller gets its own future, so cancelling it doesn't affect the other callers
+    SettableFuture<Pdu<ReadReply>> future = SettableFuture.create();
+    FutureUtils.delegateTo(inFlight, future);
+    return future;
+  }
+
+  public ListenableFuture<ReadAllResult> readAll(Collection<ReadRequest> requests,
+                                                 int maxInFlight) {
+    checkArgument(0 < maxInFlight, "maxInFlight must be positive: %s", maxInFlight);
+    Set<String> keys = new HashSet<String>();
+    for (ReadRequest request : requests) {
+      checkArgument(keys.add(request.getChannel()), "Key is read twice: %s",
+          request.getChannel());
+    }
+    return new ReadAllTask(this, new ArrayList<ReadRequest>(requests), maxInFlight).start();
   }
 
   public <T> ListenableFuture<Pdu<WriteReply>> write(WriteRequest<T> request, Ack ack) {
@@ -82,6 +140,9 @@ class RtmService {
     mConnection.set(connection);
     mPubSub.onConnected();
     drainPendingQueue();
+    if (null != mOfflineSpool) {
+      mOfflineSpool.onConnected(connection);
+    }
   }
 
   /**
@@ -90,6 +151,9 @@ class RtmService {
   public void onDisconnected() {
     mConnection.set(null);
     mPubSub.onDisconnected();
+    if (null != mOfflineSpool) {
+      mOfflineSpool.onDisconnected();
+    }
   }
 
   /**
@@ -106,27 +170,33 @@ class RtmService {
     }
   }
 
-  private void performAction(Runnable action) {
+  private void performAction(Runnable action, Object payload, SettableFuture<?> future) {
     if (isConnected()) {
       action.run();
     } else {
-      maybeEnqueuePendingAction(action);
+      maybeEnqueuePendingAction(action, payload, future);
     }
   }
 
-  private void maybeEnqueuePendingAction(Runnable action) {
+  private void maybeEnqueuePendingAction(Runnable action, Object payload,
+                                         SettableFuture<?> future) {
     if (null == mPendingQueue) {
       // offline queue has zero size
       throw new IllegalStateException("Offline operations are disabled");
     }
 
-    synchronized (mQueueLock) {
-      // make sure that we aren't connected before enqueueing
-      if (!isConnected()) {
-        mPendingQueue.add(action);
-      } else {
-        action.run();
+    List<Runnable> dropped = new ArrayList<Runnable>();
+    try {
+      synchronized (mQueueLock) {
+        // make sure that we aren't connected before enqueueing
+        if (!isConnected()) {
+          mPendingQueue.add(action, payload, future, dropped);
+        } else {
+          action.run();
+        }
       }
+    } finally {
+      failDropped(dropped);
     }
   }
 
@@ -135,10 +205,16 @@ class RtmService {
       return;
     }
 
+    List<Runnable> dropped = new ArrayList<Runnable>();
     synchronized (mQueueLock) {
-      LOG.debug("Drain pending actions (#{})", mPendingQueue.size());
+      LOG.debug("Drain pending actions (#{}, {} bytes)", mPendingQueue.size(),
+          mPendingQueue.getBytes());
       while (isConnected() && (0 < mPendingQueue.size())) {
-        Runnable action = mPendingQueue.poll();
+        Runnable action = mPendingQueue.poll(dropped);
+        if (null == action) {
+          // the rest of the actions have expired
+          break;
+        }
         try {
           action.run();
         } catch (Exception ex) {
@@ -146,10 +222,29 @@ class RtmService {
         }
       }
     }
+    failDropped(dropped);
+  }
+
+  // fails the futures of dropped pending actions, called without the queue lock held
+  private static void failDropped(List<Runnable> dropped) {
+    for (Runnable failure : dropped) {
+      failure.run();
+    }
   }
 
   <T> ListenableFuture<Pdu<T>> send(final String action, final Object payload,
                                     final Ack ack, final Class<T> clazz) {
+    if (null != mOfflineSpool && OfflineSpool.isSpooled(action)) {
+      synchronized (mQueueLock) {
+        // keep the order: while the spool is replayed, new requests are spooled after it
+        if (!isConnected() || !mOfflineSpool.isEmpty()) {
+          ListenableFuture<Pdu<T>> spooled = mOfflineSpool.enqueue(action, payload, ack);
+          FutureUtils.addExceptionLogging(spooled, "RTM action is failed", LOG);
+          return spooled;
+        }
+      }
+    }
+
     final SettableFuture<Pdu<T>> future = SettableFuture.create();
 
     Runnable runnable = new Runnable() {
@@ -159,34 +254,99 @@ class RtmService {
         if (null == connection) {
           throw new IllegalStateException("You aren't connected to RTM");
         }
+        FutureUtils.delegateTo(sendNow(connection, action, payload, ack, clazz), future);
+      }
+    };
 
-        ListenableFuture<Pdu<T>> response;
-        if (ack == Ack.NO) {
-          // if we don't need ack then transform return value to null and return future with null
-          response = Futures.transform(
-              connection.sendNoAck(action, payload),
-              new Function<Void, Pdu<T>>() {
-                @Override
-                public Pdu<T> apply(Void input) {
-                  return null;
-                }
-              });
-
-          FutureUtils.delegateTo(response, future);
-        } else {
-          response = connection.send(action, payload, clazz);
-          FutureUtils.delegateTo(response, future);
+    try {
+      performAction(runnable, payload, future);
+    } catch (Exception ex) {
+      future.setException(ex);
+    }
+
+    FutureUtils.addExceptionLogging(future, "RTM action is failed", LOG);
+    return future;
+  }
+
+  /*
+   * Sends a batch of PDUs with the same action back-to-back. While offline, the whole batch takes
+   * a single slot in the pending queue. If the offline spool is set, spooled actions of the batch
+   * are kept in the spool like single requests, so they stay in order with them.
+   *
+   * The returned future completes when every PDU of the batch is replied, and holds the reply
+   * future of each PDU, so a failed PDU doesn't hide the replies of the others. The returned
+   * future itself fails only if the batch can't be sent at all.
+   */
+  <T> ListenableFuture<List<ListenableFuture<Pdu<T>>>> sendBatch(
+      final String action, final List<?> payloads, final Ack ack, final Class<T> clazz) {
+    final SettableFuture<List<ListenableFuture<Pdu<T>>>> future = SettableFuture.create();
+
+    if (null != mOfflineSpool && OfflineSpool.isSpooled(action)) {
+      synchronized (mQueueLock) {
+        if (!isConnected() || !mOfflineSpool.isEmpty()) {
+          List<ListenableFuture<Pdu<T>>> responses =
+              new ArrayList<ListenableFuture<Pdu<T>>>(payloads.size());
+          for (Object payload : payloads) {
+            ListenableFuture<Pdu<T>> spooled = mOfflineSpool.enqueue(action, payload, ack);
+            FutureUtils.addExceptionLogging(spooled, "RTM action is failed", LOG);
+            responses.add(spooled);
+          }
+          completeWhenReplied(responses, future);
+          return future;
+        }
+      }
+    }
+
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        Connection connection = getConnection();
+        if (null == connection) {
+          throw new IllegalStateException("You aren't connected to RTM");
         }
+        List<ListenableFuture<Pdu<T>>> responses =
+            new ArrayList<ListenableFuture<Pdu<T>>>(payloads.size());
+        for (Object payload : payloads) {
+          responses.add(sendNow(connection, action, payload, ack, clazz));
+        }
+        completeWhenReplied(responses, future);
       }
     };
 
     try {
-      performAction(runnable);
+      performAction(runnable, payloads, future);
     } catch (Exception ex) {
       future.setException(ex);
     }
 
-    FutureUtils.addExceptionLogging(future, "RTM action is failed", LOG);
+    FutureUtils.addExceptionLogging(future, "RTM batch action is failed", LOG);
     return future;
   }
+
+  private static <T> void completeWhenReplied(
+      final List<ListenableFuture<Pdu<T>>> responses,
+      final SettableFuture<List<ListenableFuture<Pdu<T>>>> future) {
+    Futures.successfulAsList(responses).addListener(new Runnable() {
+      @Override
+      public void run() {
+        future.set(responses);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private <T> ListenableFuture<Pdu<T>> sendNow(Connection connection, String action,
+                                               Object payload, Ack ack, Class<T> clazz) {
+    if (ack == Ack.NO) {
+      // if we don't need ack then transform return value to null and return future with null
+      return Futures.transform(
+          connection.sendNoAck(action, payload),
+          new Function<Void, Pdu<T>>() {
+            @Override
+            public Pdu<T> apply(Void input) {
+              return null;
+            }
+          });
+    }
+    return connection.send(action, payload, clazz);
+  }
 }
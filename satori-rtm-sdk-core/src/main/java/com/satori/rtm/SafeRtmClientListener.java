@@ -0,0 +1,126 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps a user {@link RtmClientListener} and logs everything that its callbacks throw, errors
+ * included, so that user code can't break the client state machine.
+ */
+class SafeRtmClientListener implements RtmClientListener {
+  private final RtmClientListener mListener;
+  private final Logger mLogger;
+
+  private SafeRtmClientListener(RtmClientListener listener) {
+    this.mListener = checkNotNull(listener);
+    this.mLogger = LoggerFactory.getLogger(listener.getClass());
+  }
+
+  static RtmClientListener wrap(RtmClientListener listener) {
+    if (listener instanceof SafeRtmClientListener) {
+      return listener;
+    }
+    return new SafeRtmClientListener(listener);
+  }
+
+  @Override
+  public void onConnectingError(RtmClient client, Exception ex) {
+    try {
+      mListener.onConnectingError(client, ex);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onTransportError(RtmClient client, Exception ex) {
+    try {
+      mListener.onTransportError(client, ex);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onError(RtmClient client, Exception ex) {
+    try {
+      mListener.onError(client, ex);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterStopped(RtmClient client) {
+    try {
+      mListener.onEnterStopped(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveStopped(RtmClient client) {
+    try {
+      mListener.onLeaveStopped(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterConnecting(RtmClient client) {
+    try {
+      mListener.onEnterConnecting(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveConnecting(RtmClient client) {
+    try {
+      mListener.onLeaveConnecting(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterConnected(RtmClient client) {
+    try {
+      mListener.onEnterConnected(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveConnected(RtmClient client) {
+    try {
+      mListener.onLeaveConnected(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterAwaiting(RtmClient client) {
+    try {
+      mListener.onEnterAwaiting(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveAwaiting(RtmClient client) {
+    try {
+      mListener.onLeaveAwaiting(client);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+}
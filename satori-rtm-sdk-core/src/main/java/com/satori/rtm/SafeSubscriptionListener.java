@@ -0,0 +1,173 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.model.UnsubscribeReply;
+import com.satori.rtm.model.UnsubscribeRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps a user {@link SubscriptionListener} and logs everything that its callbacks throw, errors
+ * included, so that user code can't break the subscription state machine.
+ */
+class SafeSubscriptionListener implements SubscriptionListener {
+  private final SubscriptionListener mListener;
+  private final Logger mLogger;
+
+  private SafeSubscriptionListener(SubscriptionListener listener) {
+    this.mListener = checkNotNull(listener);
+    this.mLogger = LoggerFactory.getLogger(listener.getClass());
+  }
+
+  static SubscriptionListener wrap(SubscriptionListener listener) {
+    if (listener instanceof SafeSubscriptionListener) {
+      return listener;
+    }
+    return new SafeSubscriptionListener(listener);
+  }
+
+  SubscriptionListener getListener() {
+    return mListener;
+  }
+
+  @Override
+  public void onCreated() {
+    try {
+      mListener.onCreated();
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onDeleted() {
+    try {
+      mListener.onDeleted();
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterUnsubscribed(UnsubscribeRequest request, UnsubscribeReply reply) {
+    try {
+      mListener.onEnterUnsubscribed(request, reply);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveUnsubscribed(UnsubscribeRequest request, UnsubscribeReply reply) {
+    try {
+      mListener.onLeaveUnsubscribed(request, reply);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterSubscribing(SubscribeRequest request) {
+    try {
+      mListener.onEnterSubscribing(request);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveSubscribing(SubscribeRequest request) {
+    try {
+      mListener.onLeaveSubscribing(request);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterSubscribed(SubscribeRequest request, SubscribeReply reply) {
+    try {
+      mListener.onEnterSubscribed(request, reply);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveSubscribed(SubscribeRequest request, SubscribeReply reply) {
+    try {
+      mListener.onLeaveSubscribed(request, reply);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterUnsubscribing(UnsubscribeRequest request) {
+    try {
+      mListener.onEnterUnsubscribing(request);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveUnsubscribing(UnsubscribeRequest request) {
+    try {
+      mListener.onLeaveUnsubscribing(request);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onEnterFailed() {
+    try {
+      mListener.onEnterFailed();
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onLeaveFailed() {
+    try {
+      mListener.onLeaveFailed();
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onSubscriptionData(SubscriptionData data) {
+    try {
+      mListener.onSubscriptionData(data);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onSubscriptionError(SubscriptionError error) {
+    try {
+      mListener.onSubscriptionError(error);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+
+  @Override
+  public void onSubscriptionInfo(SubscriptionInfo info) {
+    try {
+      mListener.onSubscriptionInfo(info);
+    } catch (Throwable e) {
+      mLogger.error("Suppress exception", e);
+    }
+  }
+}
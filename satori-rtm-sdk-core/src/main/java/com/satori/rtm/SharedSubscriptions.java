@@ -0,0 +1,289 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.model.UnsubscribeReply;
+import com.satori.rtm.model.UnsubscribeRequest;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shares one RTM subscription of a channel between several local listeners.
+ * <p>
+ * {@link RtmClient#createSubscription(String, EnumSet, SubscriptionListener)
+ * RtmClient.createSubscription()} allows only one subscription per channel. Use
+ * {@code SharedSubscriptions} when several independent components of an application need the
+ * same channel. The first {@link #attach(String, EnumSet, SubscriptionListener) attach()} of a
+ * channel creates the subscription, next ones add their listeners to it. Each incoming PDU is
+ * parsed once and the same {@link SubscriptionData} object is passed to every listener of the
+ * channel. The subscription is removed when the last listener is detached.
+ * <p>
+ * A listener attached to a channel that is already subscribed gets {@code onCreated()} and
+ * {@code onEnterSubscribed()} right away, so that every listener sees a consistent lifecycle.
+ * <p>
+ * For example:
+ * <pre>
+ * SharedSubscriptions shared = new SharedSubscriptions(client);
+ * shared.attach("my_channel", SubscriptionMode.SIMPLE, quotesListener);
+ * shared.attach("my_channel", SubscriptionMode.SIMPLE, auditListener);
+ * ...
+ * shared.detach("my_channel", auditListener);
+ * </pre>
+ */
+public class SharedSubscriptions {
+  private final RtmClient mClient;
+  private final Object mLock = new Object();
+  // guarded by mLock
+  private final Map<String, SharedChannel> mChannels = new HashMap<String, SharedChannel>();
+
+  /**
+   * Creates a registry of shared subscriptions.
+   *
+   * @param client RTM client to create the subscriptions
+   */
+  public SharedSubscriptions(RtmClient client) {
+    this.mClient = checkNotNull(client);
+  }
+
+  /**
+   * Adds a listener to the subscription of the channel and creates the subscription if it doesn't
+   * exist yet.
+   *
+   * @param channel  name of the channel
+   * @param modes    subscription modes, must be the same for all listeners of the channel
+   * @param listener subscription listener
+   * @throws IllegalStateException if the channel is already shared with other subscription modes
+   *                               or the listener is already attached to the channel
+   */
+  public void attach(String channel, EnumSet<SubscriptionMode> modes,
+                     SubscriptionListener listener) {
+    checkNotNull(channel);
+    checkNotNull(modes);
+    checkNotNull(listener);
+    // the subscription is created and removed under the lock, so a detach of the last listener
+    // and a concurrent attach can't reach the RTM client in the wrong order
+    synchronized (mLock) {
+      SharedChannel shared = mChannels.get(channel);
+      if (null != shared) {
+        if (!shared.mModes.equals(modes)) {
+          throw new IllegalStateException(String.format(
+              "Channel %s is already shared with modes %s", channel, shared.mModes));
+        }
+        if (null != shared.find(listener)) {
+          throw new IllegalStateException("Listener is already attached");
+        }
+        shared.add(listener, false);
+        return;
+      }
+      shared = new SharedChannel(modes);
+      shared.add(listener, true);
+      mChannels.put(channel, shared);
+      try {
+        mClient.createSubscription(channel, modes, shared);
+      } catch (RuntimeException ex) {
+        mChannels.remove(channel);
+        throw ex;
+      }
+    }
+  }
+
+  /**
+   * Removes a listener from the subscription of the channel. The subscription is removed when
+   * its last listener is detached.
+   *
+   * @param channel  name of the channel
+   * @param listener subscription listener passed to
+   *                 {@link #attach(String, EnumSet, SubscriptionListener) attach()}
+   * @throws IllegalStateException if the listener isn't attached to the channel
+   */
+  public void detach(String channel, SubscriptionListener listener) {
+    checkNotNull(channel);
+    checkNotNull(listener);
+    SubscriptionListener removed;
+    synchronized (mLock) {
+      SharedChannel shared = mChannels.get(channel);
+      removed = (null != shared) ? shared.find(listener) : null;
+      if (null == removed) {
+        throw new IllegalStateException("Listener isn't attached");
+      }
+      if (1 == shared.mListeners.size()) {
+        // the last listener stays to see the rest of the lifecycle, up to onDeleted()
+        mClient.removeSubscription(channel);
+        mChannels.remove(channel);
+        return;
+      }
+      shared.mListeners.remove(removed);
+    }
+    removed.onDeleted();
+  }
+
+  /**
+   * Returns the number of listeners attached to the channel.
+   *
+   * @param channel name of the channel
+   * @return number of listeners, zero if the channel isn't shared
+   */
+  public int getListenerCount(String channel) {
+    synchronized (mLock) {
+      SharedChannel shared = mChannels.get(channel);
+      return (null != shared) ? shared.mListeners.size() : 0;
+    }
+  }
+
+  /*
+   * Fans out the subscription callbacks to the attached listeners. Callbacks run on the
+   * subscription dispatcher, attach() and detach() may run on any thread. The callbacks that
+   * change the state a late listener catches up with are synchronized with add().
+   */
+  private static class SharedChannel implements SubscriptionListener {
+    final EnumSet<SubscriptionMode> mModes;
+    final List<SubscriptionListener> mListeners = new CopyOnWriteArrayList<SubscriptionListener>();
+    // guarded by this
+    private boolean mIsCreated;
+    private SubscribeRequest mSubscribeRequest;
+    private SubscribeReply mSubscribeReply;
+
+    SharedChannel(EnumSet<SubscriptionMode> modes) {
+      this.mModes = EnumSet.copyOf(modes);
+    }
+
+    SubscriptionListener find(SubscriptionListener listener) {
+      for (SubscriptionListener safe : mListeners) {
+        if (((SafeSubscriptionListener) safe).getListener() == listener) {
+          return safe;
+        }
+      }
+      return null;
+    }
+
+    synchronized void add(SubscriptionListener listener, boolean isNew) {
+      SubscriptionListener safe = SafeSubscriptionListener.wrap(listener);
+      if (!isNew && mIsCreated) {
+        // catch up with the lifecycle events that other listeners have already seen
+        safe.onCreated();
+        if (null != mSubscribeReply) {
+          safe.onEnterSubscribed(mSubscribeRequest, mSubscribeReply);
+        }
+      }
+      mListeners.add(safe);
+    }
+
+    @Override
+    public synchronized void onCreated() {
+      mIsCreated = true;
+      for (SubscriptionListener listener : mListeners) {
+        listener.onCreated();
+      }
+    }
+
+    @Override
+    public void onDeleted() {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onDeleted();
+      }
+    }
+
+    @Override
+    public void onEnterUnsubscribed(UnsubscribeRequest request, UnsubscribeReply reply) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onEnterUnsubscribed(request, reply);
+      }
+    }
+
+    @Override
+    public void onLeaveUnsubscribed(UnsubscribeRequest request, UnsubscribeReply reply) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onLeaveUnsubscribed(request, reply);
+      }
+    }
+
+    @Override
+    public void onEnterSubscribing(SubscribeRequest request) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onEnterSubscribing(request);
+      }
+    }
+
+    @Override
+    public void onLeaveSubscribing(SubscribeRequest request) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onLeaveSubscribing(request);
+      }
+    }
+
+    @Override
+    public synchronized void onEnterSubscribed(SubscribeRequest request, SubscribeReply reply) {
+      mSubscribeRequest = request;
+      mSubscribeReply = reply;
+      for (SubscriptionListener listener : mListeners) {
+        listener.onEnterSubscribed(request, reply);
+      }
+    }
+
+    @Override
+    public synchronized void onLeaveSubscribed(SubscribeRequest request, SubscribeReply reply) {
+      mSubscribeRequest = null;
+      mSubscribeReply = null;
+      for (SubscriptionListener listener : mListeners) {
+        listener.onLeaveSubscribed(request, reply);
+      }
+    }
+
+    @Override
+    public void onEnterUnsubscribing(UnsubscribeRequest request) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onEnterUnsubscribing(request);
+      }
+    }
+
+    @Override
+    public void onLeaveUnsubscribing(UnsubscribeRequest request) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onLeaveUnsubscribing(request);
+      }
+    }
+
+    @Override
+    public void onEnterFailed() {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onEnterFailed();
+      }
+    }
+
+    @Override
+    public void onLeaveFailed() {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onLeaveFailed();
+      }
+    }
+
+    @Override
+    public void onSubscriptionData(SubscriptionData data) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onSubscriptionData(data);
+      }
+    }
+
+    @Override
+    public void onSubscriptionError(SubscriptionError error) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onSubscriptionError(error);
+      }
+    }
+
+    @Override
+    public void onSubscriptionInfo(SubscriptionInfo info) {
+      for (SubscriptionListener listener : mListeners) {
+        listener.onSubscriptionInfo(info);
+      }
+    }
+  }
+}
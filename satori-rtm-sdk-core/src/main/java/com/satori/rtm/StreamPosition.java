@@ -0,0 +1,66 @@
+package com.satori.rtm;
+
+import com.google.common.primitives.Longs;
+
+/*
+ * Numeric form of an RTM stream position, such as "1479315802:0".
+ *
+ * Positions of one channel are ordered by the first number, then by the second one.
+ */
+final class StreamPosition implements Comparable<StreamPosition> {
+  private final long mEpoch;
+  private final long mOffset;
+
+  private StreamPosition(long epoch, long offset) {
+    this.mEpoch = epoch;
+    this.mOffset = offset;
+  }
+
+  /*
+   * Returns null if the position doesn't have the "epoch:offset" form.
+   */
+  static StreamPosition parse(String position) {
+    if (null == position) {
+      return null;
+    }
+    int separator = position.indexOf(':');
+    if (separator <= 0) {
+      return null;
+    }
+    Long epoch = Longs.tryParse(position.substring(0, separator));
+    Long offset = Longs.tryParse(position.substring(separator + 1));
+    if (null == epoch || null == offset) {
+      return null;
+    }
+    return new StreamPosition(epoch, offset);
+  }
+
+  boolean isSameEpoch(StreamPosition other) {
+    return mEpoch == other.mEpoch;
+  }
+
+  @Override
+  public int compareTo(StreamPosition other) {
+    int result = Longs.compare(mEpoch, other.mEpoch);
+    return (0 != result) ? result : Longs.compare(mOffset, other.mOffset);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof StreamPosition)) {
+      return false;
+    }
+    StreamPosition other = (StreamPosition) obj;
+    return mEpoch == other.mEpoch && mOffset == other.mOffset;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Longs.hashCode(mEpoch) + Longs.hashCode(mOffset);
+  }
+
+  @Override
+  public String toString() {
+    return mEpoch + ":" + mOffset;
+  }
+}
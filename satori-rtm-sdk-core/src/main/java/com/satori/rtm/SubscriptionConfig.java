@@ -1,20 +1,48 @@
 package com.satori.rtm;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.satori.rtm.model.AnyJson;
 import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
 import com.satori.rtm.model.SubscriptionError;
-import com.satori.rtm.utils.TryCatchProxy;
+import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.storage.CheckpointStore;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides settings that configure a subscription.
  */
 public class SubscriptionConfig {
+  private static final ConflationKeyExtractor CHANNEL_KEY = new ConflationKeyExtractor() {
+    @Override
+    public String getKey(SubscriptionData data) {
+      return Strings.nullToEmpty(data.getChannel());
+    }
+  };
 
   final private SubscribeRequest mSubscribeRequest;
   final private EnumSet<SubscriptionMode> mSubscriptionModes;
   final private SubscriptionListener mUserListeners;
+  private boolean mPartitionByChannel = false;
+  private ConflationKeyExtractor mConflationKeys;
+  private final AtomicLong mConflatedCount = new AtomicLong();
+  private boolean mIsDeduplicated = false;
+  private boolean mIsTrackingDiscontinuities = false;
+  private final AtomicLong mSuppressedCount = new AtomicLong();
+  private final AtomicLong mMissedMessageCount = new AtomicLong();
+  private final AtomicLong mFastForwardCount = new AtomicLong();
+  private final AtomicLong mDiscontinuityCount = new AtomicLong();
+  private final AtomicLong mSubscribeCount = new AtomicLong();
+  private CheckpointStore mCheckpoints;
+  private String mCheckpointId;
+  // accessed only on the dispatcher thread
+  private final Map<String, StreamPosition> mDeliveredPositions =
+      new HashMap<String, StreamPosition>();
 
   /**
    * Creates a subscription configuration with a set of subscription modes and a subscription listener.
@@ -23,8 +51,8 @@ public class SubscriptionConfig {
    * @param listener subscription listener
    */
   public SubscriptionConfig(EnumSet<SubscriptionMode> modes, SubscriptionListener listener) {
-    // wrap all user's code to try catch proxy
-    SubscriptionListener safeListener = TryCatchProxy.wrap(listener, SubscriptionListener.class);
+    // wrap all user's code to catch and log exceptions
+    SubscriptionListener safeListener = SafeSubscriptionListener.wrap(listener);
     this.mSubscriptionModes = modes;
     this.mUserListeners = safeListener;
     this.mSubscribeRequest = new SubscribeRequest();
@@ -138,6 +166,28 @@ public class SubscriptionConfig {
     return this;
   }
 
+  /**
+   * Delivers the data of a prefix subscription in parallel, partitioned by channel.
+   * <p>
+   * A prefix subscription (see {@link #setPrefix(Boolean)}) delivers the messages of every
+   * matching channel to one listener. By default, all of them are delivered sequentially. When
+   * partitioning is enabled, each {@link com.satori.rtm.model.SubscriptionData} is delivered on
+   * the dispatch lane of its channel, so the messages of different channels are processed in
+   * parallel while the messages of one channel stay in order.
+   * <p>
+   * Partitioning requires dispatch lanes, see
+   * {@link RtmClientBuilder#setSubscriptionDispatchLanes(int) RtmClientBuilder.setSubscriptionDispatchLanes()}.
+   * The listener must be thread-safe, and {@code onSubscriptionData} isn't ordered relative to
+   * the other callbacks of the subscription.
+   *
+   * @param partitionByChannel {@code true} to partition subscription data by channel
+   * @return the current {@code SubscriptionConfig} object
+   */
+  public SubscriptionConfig setPartitionByChannel(boolean partitionByChannel) {
+    this.mPartitionByChannel = partitionByChannel;
+    return this;
+  }
+
   /**
    * Sets persistence history window
    *
@@ -183,6 +233,171 @@ public class SubscriptionConfig {
     return true;
   }
 
+  /**
+   * Keeps only the latest subscription data of each channel while the listener is behind.
+   * <p>
+   * By default, every {@link SubscriptionData} is queued for the listener, so a slow listener
+   * gets all of them with a growing delay. When conflation is enabled and new subscription data
+   * arrives while older data of the same channel is still waiting for the listener, the older
+   * data is dropped and the listener gets only the latest one. The number of dropped items is
+   * returned by {@link #getConflatedCount()}.
+   * <p>
+   * Conflation requires dispatch lanes, see
+   * {@link RtmClientBuilder#setSubscriptionDispatchLanes(int) RtmClientBuilder.setSubscriptionDispatchLanes()}.
+   * Only use it when the latest value is all that matters, for example for price ticks.
+   *
+   * @param conflation {@code true} to conflate subscription data by channel
+   * @return the current {@code SubscriptionConfig} object
+   */
+  public SubscriptionConfig setConflation(boolean conflation) {
+    this.mConflationKeys = conflation ? CHANNEL_KEY : null;
+    return this;
+  }
+
+  /**
+   * Keeps only the latest subscription data of each key while the listener is behind.
+   * <p>
+   * This form of {@code setConflation} conflates subscription data by a key extracted from the
+   * data, see {@link #setConflation(boolean)}.
+   *
+   * @param keyExtractor extracts the conflation key from subscription data
+   * @return the current {@code SubscriptionConfig} object
+   */
+  public SubscriptionConfig setConflation(ConflationKeyExtractor keyExtractor) {
+    this.mConflationKeys = keyExtractor;
+    return this;
+  }
+
+  /**
+   * Returns the number of subscription data items dropped by conflation.
+   *
+   * @return number of conflated subscription data items
+   * @see #setConflation(boolean)
+   */
+  public long getConflatedCount() {
+    return mConflatedCount.get();
+  }
+
+  /**
+   * Drops subscription data that was already delivered to the listener.
+   * <p>
+   * After a reconnect or a resubscribe, RTM may send again messages that the listener has
+   * already received, for example if the subscription is restored from history. When
+   * deduplication is enabled, the RTM SDK remembers the position of the last subscription data
+   * delivered for each channel and drops subscription data at or below this position. The number
+   * of dropped messages is returned by {@link #getSuppressedCount()}.
+   * <p>
+   * Subscription data with a position that isn't in the {@code epoch:offset} form is always
+   * delivered.
+   *
+   * @param deduplication {@code true} to drop repeated subscription data
+   * @return the current {@code SubscriptionConfig} object
+   */
+  public SubscriptionConfig setDeduplication(boolean deduplication) {
+    this.mIsDeduplicated = deduplication;
+    return this;
+  }
+
+  /**
+   * Counts the positions of a channel that don't continue from the previous subscription data,
+   * see {@link SubscriptionStats#getDiscontinuityCount()}.
+   * <p>
+   * Tracking parses the position of every subscription data, so it's disabled by default.
+   * {@code out_of_sync} errors are counted as discontinuities anyway. Deduplication tracks the
+   * positions too, so it enables this counting as well, see {@link #setDeduplication(boolean)}.
+   *
+   * @param tracking {@code true} to count position discontinuities
+   * @return the current {@code SubscriptionConfig} object
+   */
+  public SubscriptionConfig setDiscontinuityTracking(boolean tracking) {
+    this.mIsTrackingDiscontinuities = tracking;
+    return this;
+  }
+
+  /**
+   * Returns the number of messages dropped by deduplication.
+   *
+   * @return number of suppressed messages
+   * @see #setDeduplication(boolean)
+   */
+  public long getSuppressedCount() {
+    return mSuppressedCount.get();
+  }
+
+  /**
+   * Returns a snapshot of the subscription counters.
+   * <p>
+   * The counters belong to this configuration, so they start from zero when a subscription is
+   * updated with a new configuration.
+   *
+   * @return subscription counters
+   * @see ExtendedRtmClient#getSubscriptionStats(String)
+   */
+  public SubscriptionStats getStats() {
+    return new SubscriptionStats(
+        mMissedMessageCount.get(),
+        mFastForwardCount.get(),
+        mDiscontinuityCount.get(),
+        Math.max(0, mSubscribeCount.get() - 1),
+        mConflatedCount.get(),
+        mSuppressedCount.get());
+  }
+
+  /*
+   * Tracks the position of the channel of the subscription data. Returns true if deduplication
+   * is enabled and the subscription data is at or below the last position delivered for its
+   * channel. Must be called on the dispatcher thread.
+   */
+  boolean isDuplicate(SubscriptionData data) {
+    // called for every subscription data, positions are parsed only if something needs them
+    if (!mIsDeduplicated && !mIsTrackingDiscontinuities) {
+      return false;
+    }
+    StreamPosition position = StreamPosition.parse(data.getPosition());
+    if (null == position) {
+      return false;
+    }
+    String channel = Strings.nullToEmpty(data.getChannel());
+    StreamPosition delivered = mDeliveredPositions.get(channel);
+    if (mIsDeduplicated && null != delivered && position.compareTo(delivered) <= 0) {
+      Iterable<AnyJson> messages = data.getMessages();
+      mSuppressedCount.addAndGet((null != messages) ? Iterables.size(messages) : 0);
+      return true;
+    }
+    if (null != delivered && !position.isSameEpoch(delivered)) {
+      mDiscontinuityCount.incrementAndGet();
+    }
+    mDeliveredPositions.put(channel, position);
+    return false;
+  }
+
+  void onSubscribe() {
+    mSubscribeCount.incrementAndGet();
+  }
+
+  void onInfo(SubscriptionInfo info) {
+    if ("fast_forward".equals(info.getInfo())) {
+      mFastForwardCount.incrementAndGet();
+    }
+    onMissedMessages(info.getMissedMessageCount());
+  }
+
+  void onSubscriptionError(SubscriptionError error) {
+    if (null == error) {
+      return;
+    }
+    if ("out_of_sync".equals(error.getError())) {
+      mDiscontinuityCount.incrementAndGet();
+    }
+    onMissedMessages(error.getMissedMessageCount());
+  }
+
+  private void onMissedMessages(Integer count) {
+    if (null != count && 0 < count) {
+      mMissedMessageCount.addAndGet(count);
+    }
+  }
+
   /*
    * Creates a PDU body for a subscription request.
    * Override this method if custom re-subscription behaviour is needed.
@@ -216,6 +431,22 @@ public class SubscriptionConfig {
     return mUserListeners;
   }
 
+  boolean isTrackingPosition() {
+    return mSubscriptionModes.contains(SubscriptionMode.TRACK_POSITION);
+  }
+
+  boolean isPartitionedByChannel() {
+    return mPartitionByChannel;
+  }
+
+  ConflationKeyExtractor getConflationKeyExtractor() {
+    return mConflationKeys;
+  }
+
+  void onConflated() {
+    mConflatedCount.incrementAndGet();
+  }
+
   void onPosition(String position) {
     // method updates position from rtm replies
     // ignore position if it's not needed
@@ -223,6 +454,36 @@ public class SubscriptionConfig {
       return;
     }
     mSubscribeRequest.setPosition(position);
+    if (null != mCheckpoints && null != position) {
+      mCheckpoints.save(mCheckpointId, position);
+    }
+  }
+
+  /*
+   * Deletes the saved position of a removed subscription and stops saving positions, so a late
+   * subscription data can't save it again. Must be called on the dispatcher thread.
+   */
+  void detachCheckpointStore() {
+    if (null == mCheckpoints) {
+      return;
+    }
+    mCheckpoints.remove(mCheckpointId);
+    mCheckpoints = null;
+  }
+
+  /*
+   * Saves the tracked positions of the subscription to the checkpoint store. If the position
+   * isn't set explicitly, the subscription resumes from the position found in the store.
+   */
+  void attachCheckpointStore(String subscriptionId, CheckpointStore checkpoints) {
+    if (!isTrackingPosition()) {
+      return;
+    }
+    this.mCheckpoints = checkpoints;
+    this.mCheckpointId = subscriptionId;
+    if (null == mSubscribeRequest.getPosition()) {
+      mSubscribeRequest.setPosition(checkpoints.load(subscriptionId));
+    }
   }
 
   void onSuccessSubscribe(String position) {
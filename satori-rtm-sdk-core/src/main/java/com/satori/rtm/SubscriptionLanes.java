@@ -0,0 +1,96 @@
+package com.satori.rtm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.satori.rtm.utils.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A fixed set of single-threaded worker lanes for subscription callbacks.
+ *
+ * A key is always mapped to the same lane, so the callbacks for a key run sequentially and in
+ * order, while callbacks for different keys can run in parallel on different lanes.
+ */
+class SubscriptionLanes {
+  private final static Logger LOG = LoggerFactory.getLogger(SubscriptionLanes.class);
+  private static final String THREAD_NAME_PREFIX = "rtm-subscription-lane-";
+  private final List<ThreadPoolExecutor> mLanes;
+
+  SubscriptionLanes(int lanes) {
+    this(lanes, new ThreadFactoryBuilder()
+        .setNameFormat(THREAD_NAME_PREFIX + "%d")
+        .setDaemon(true)
+        .build());
+  }
+
+  SubscriptionLanes(int lanes, ThreadFactory threadFactory) {
+    if (lanes <= 0) {
+      throw new IllegalArgumentException("Number of lanes must be positive: " + lanes);
+    }
+    List<ThreadPoolExecutor> executors = new ArrayList<ThreadPoolExecutor>(lanes);
+    for (int i = 0; i < lanes; i++) {
+      executors.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(), threadFactory,
+          // callbacks that arrive after the client is shut down are dropped
+          new ThreadPoolExecutor.DiscardPolicy()));
+    }
+    this.mLanes = Collections.unmodifiableList(executors);
+  }
+
+  /*
+   * Creates lanes backed by virtual threads if requested and supported by the JVM, otherwise
+   * by daemon platform threads.
+   */
+  static SubscriptionLanes create(int lanes, boolean virtualThreads) {
+    if (virtualThreads) {
+      ThreadFactory factory = VirtualThreads.newThreadFactory(THREAD_NAME_PREFIX);
+      if (null != factory) {
+        return new SubscriptionLanes(lanes, factory);
+      }
+      LOG.warn("Virtual threads aren't supported by this JVM, use platform threads for lanes");
+    }
+    return new SubscriptionLanes(lanes);
+  }
+
+  Executor laneFor(String key) {
+    int index = (key.hashCode() & Integer.MAX_VALUE) % mLanes.size();
+    return mLanes.get(index);
+  }
+
+  int size() {
+    return mLanes.size();
+  }
+
+  List<Integer> getQueueDepths() {
+    List<Integer> depths = new ArrayList<Integer>(mLanes.size());
+    for (ThreadPoolExecutor lane : mLanes) {
+      depths.add(lane.getQueue().size());
+    }
+    return depths;
+  }
+
+  void shutdown() {
+    for (ThreadPoolExecutor lane : mLanes) {
+      lane.shutdown();
+    }
+  }
+
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ThreadPoolExecutor lane : mLanes) {
+      long nanos = deadline - System.nanoTime();
+      if (!lane.awaitTermination(nanos, TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,289 @@
+package com.satori.rtm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams {@link Publisher} of subscription data for a single channel.
+ * <p>
+ * The publisher creates the channel subscription when a subscriber subscribes to it and removes
+ * the subscription when the subscriber cancels. Subscription data is delivered only as requested
+ * by {@link Subscription#request(long)}. Up to {@code bufferSize} items are buffered while the
+ * subscriber has no outstanding demand; after that, the {@link OverflowStrategy} is applied.
+ * <p>
+ * If RTM rejects the subscription or sends a subscription error, the subscriber receives an
+ * {@link IllegalStateException} in {@link Subscriber#onError(Throwable)} and the subscription is
+ * removed.
+ * <p>
+ * The publisher is unicast: only one subscriber is allowed. To get a publisher, call
+ * {@link ExtendedRtmClient#createSubscriptionPublisher(String, EnumSet, int,
+ * SubscriptionPublisher.OverflowStrategy)
+ * ExtendedRtmClient.createSubscriptionPublisher()}.
+ */
+public class SubscriptionPublisher implements Publisher<SubscriptionData> {
+  private final static Logger LOG = LoggerFactory.getLogger(SubscriptionPublisher.class);
+
+  /**
+   * Determines what happens to subscription data that arrives while the buffer is full.
+   */
+  public enum OverflowStrategy {
+    /**
+     * Removes the oldest buffered item to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops the new item.
+     */
+    DROP_LATEST,
+
+    /**
+     * Signals an {@link IllegalStateException} to the subscriber and removes the subscription.
+     */
+    ERROR
+  }
+
+  private final RtmClient mClient;
+  private final String mChannel;
+  private final EnumSet<SubscriptionMode> mModes;
+  private final int mBufferSize;
+  private final OverflowStrategy mOverflowStrategy;
+  private final AtomicBoolean mHasSubscriber = new AtomicBoolean(false);
+  private final AtomicLong mDroppedCount = new AtomicLong();
+
+  SubscriptionPublisher(RtmClient client, String channel, EnumSet<SubscriptionMode> modes,
+                        int bufferSize, OverflowStrategy overflowStrategy) {
+    checkArgument(bufferSize > 0, "Buffer size must be positive: %s", bufferSize);
+    this.mClient = checkNotNull(client);
+    this.mChannel = checkNotNull(channel);
+    this.mModes = checkNotNull(modes);
+    this.mBufferSize = bufferSize;
+    this.mOverflowStrategy = checkNotNull(overflowStrategy);
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super SubscriptionData> subscriber) {
+    checkNotNull(subscriber);
+    if (!mHasSubscriber.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) { }
+
+        @Override
+        public void cancel() { }
+      });
+      subscriber.onError(new IllegalStateException(
+          "Publisher for channel " + mChannel + " allows only one subscriber"));
+      return;
+    }
+    BufferedSubscription subscription = new BufferedSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    subscription.start();
+  }
+
+  /**
+   * Returns the number of subscription data items that were dropped because the buffer was full.
+   *
+   * @return number of dropped items
+   */
+  public long getDroppedCount() {
+    return mDroppedCount.get();
+  }
+
+  private class BufferedSubscription extends SubscriptionAdapter implements Subscription {
+    private final Subscriber<? super SubscriptionData> mSubscriber;
+    private final Queue<SubscriptionData> mBuffer = new ArrayDeque<SubscriptionData>();
+    private final AtomicLong mRequested = new AtomicLong();
+    private final AtomicInteger mWip = new AtomicInteger();
+    private volatile boolean mCancelled;
+    private boolean mSubscribed;
+    private boolean mDone;
+    private Throwable mError;
+
+    BufferedSubscription(Subscriber<? super SubscriptionData> subscriber) {
+      this.mSubscriber = subscriber;
+    }
+
+    void start() {
+      synchronized (this) {
+        if (mCancelled || mDone) {
+          return;
+        }
+        try {
+          mClient.createSubscription(mChannel, new SubscriptionConfig(mModes, this));
+          mSubscribed = true;
+        } catch (RuntimeException ex) {
+          mError = ex;
+          mDone = true;
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        fail(new IllegalArgumentException(
+            "Request must be positive (Reactive Streams rule 3.9): " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = mRequested.get();
+        if (Long.MAX_VALUE == current) {
+          break;
+        }
+        next = current + n;
+        if (next < 0) {
+          next = Long.MAX_VALUE;
+        }
+      } while (!mRequested.compareAndSet(current, next));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      mCancelled = true;
+      removeSubscription();
+      if (0 == mWip.getAndIncrement()) {
+        clear();
+      }
+    }
+
+    @Override
+    public void onSubscriptionData(SubscriptionData data) {
+      boolean overflow = false;
+      synchronized (this) {
+        if (mDone || mCancelled) {
+          return;
+        }
+        if (mBuffer.size() < mBufferSize) {
+          mBuffer.add(data);
+        } else {
+          switch (mOverflowStrategy) {
+            case DROP_OLDEST:
+              mBuffer.poll();
+              mBuffer.add(data);
+              mDroppedCount.incrementAndGet();
+              break;
+            case DROP_LATEST:
+              mDroppedCount.incrementAndGet();
+              break;
+            case ERROR:
+              mError = new IllegalStateException(
+                  "Subscriber can't keep up with channel " + mChannel
+                      + ", buffer size is " + mBufferSize);
+              mDone = true;
+              overflow = true;
+              break;
+          }
+        }
+      }
+      if (overflow) {
+        LOG.warn("Subscription data buffer for channel {} is overflowed", mChannel);
+        removeSubscription();
+      }
+      drain();
+    }
+
+    @Override
+    public void onSubscriptionError(SubscriptionError error) {
+      fail(new IllegalStateException(String.format("Subscription to channel %s failed: %s",
+          mChannel, error.getReason())));
+    }
+
+    @Override
+    public void onEnterFailed() {
+      fail(new IllegalStateException("Unable to subscribe to channel " + mChannel));
+    }
+
+    private void fail(Throwable error) {
+      synchronized (this) {
+        if (mDone || mCancelled) {
+          return;
+        }
+        mError = error;
+        mDone = true;
+      }
+      removeSubscription();
+      drain();
+    }
+
+    private void removeSubscription() {
+      synchronized (this) {
+        if (!mSubscribed) {
+          return;
+        }
+        mSubscribed = false;
+      }
+      mClient.removeSubscription(mChannel);
+    }
+
+    private synchronized void clear() {
+      mBuffer.clear();
+    }
+
+    private void drain() {
+      if (0 != mWip.getAndIncrement()) {
+        return;
+      }
+      int missed = 1;
+      while (true) {
+        long requested = mRequested.get();
+        long emitted = 0;
+        while (emitted != requested) {
+          if (mCancelled) {
+            clear();
+            return;
+          }
+          SubscriptionData data;
+          synchronized (this) {
+            data = mBuffer.poll();
+          }
+          if (null == data) {
+            break;
+          }
+          mSubscriber.onNext(data);
+          emitted++;
+        }
+        if (mCancelled) {
+          clear();
+          return;
+        }
+        Throwable error;
+        synchronized (this) {
+          error = mDone ? mError : null;
+        }
+        if (null != error) {
+          // errors aren't delayed behind buffered items, the stream is already broken
+          mCancelled = true;
+          clear();
+          mSubscriber.onError(error);
+          return;
+        }
+        if (0 != emitted && Long.MAX_VALUE != requested) {
+          mRequested.addAndGet(-emitted);
+        }
+        missed = mWip.addAndGet(-missed);
+        if (0 == missed) {
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.satori.rtm;
+
+/**
+ * Snapshot of the counters of a subscription.
+ * <p>
+ * Use these counters to find out if a subscriber keeps up with its channel. Growing missed
+ * message and fast-forward counts mean that RTM skipped messages because the subscriber was too
+ * slow.
+ *
+ * @see ExtendedRtmClient#getSubscriptionStats(String)
+ */
+public class SubscriptionStats {
+  private final long mMissedMessageCount;
+  private final long mFastForwardCount;
+  private final long mDiscontinuityCount;
+  private final long mResubscribeCount;
+  private final long mConflatedCount;
+  private final long mSuppressedCount;
+
+  SubscriptionStats(long missedMessageCount, long fastForwardCount, long discontinuityCount,
+                    long resubscribeCount, long conflatedCount, long suppressedCount) {
+    this.mMissedMessageCount = missedMessageCount;
+    this.mFastForwardCount = fastForwardCount;
+    this.mDiscontinuityCount = discontinuityCount;
+    this.mResubscribeCount = resubscribeCount;
+    this.mConflatedCount = conflatedCount;
+    this.mSuppressedCount = suppressedCount;
+  }
+
+  /**
+   * Returns the number of messages that RTM reported as missed in subscription infos and
+   * subscription errors.
+   *
+   * @return number of missed messages
+   */
+  public long getMissedMessageCount() {
+    return mMissedMessageCount;
+  }
+
+  /**
+   * Returns the number of times RTM fast-forwarded the subscription because it fell behind.
+   *
+   * @return number of fast-forward events
+   */
+  public long getFastForwardCount() {
+    return mFastForwardCount;
+  }
+
+  /**
+   * Returns the number of times the position of a channel didn't continue from the previous
+   * subscription data, because the stream of the channel was restarted, or the subscription got
+   * an {@code out_of_sync} error.
+   * <p>
+   * Restarted streams are counted only if
+   * {@link SubscriptionConfig#setDiscontinuityTracking(boolean) discontinuity tracking} or
+   * {@link SubscriptionConfig#setDeduplication(boolean) deduplication} is enabled.
+   *
+   * @return number of position discontinuities
+   */
+  public long getDiscontinuityCount() {
+    return mDiscontinuityCount;
+  }
+
+  /**
+   * Returns the number of subscribe requests sent after the first one.
+   *
+   * @return number of resubscribes
+   */
+  public long getResubscribeCount() {
+    return mResubscribeCount;
+  }
+
+  /**
+   * Returns the number of subscription data items dropped by conflation.
+   *
+   * @return number of conflated subscription data items
+   * @see SubscriptionConfig#setConflation(boolean)
+   */
+  public long getConflatedCount() {
+    return mConflatedCount;
+  }
+
+  /**
+   * Returns the number of messages dropped by deduplication.
+   *
+   * @return number of suppressed messages
+   * @see SubscriptionConfig#setDeduplication(boolean)
+   */
+  public long getSuppressedCount() {
+    return mSuppressedCount;
+  }
+
+  @Override
+  public String toString() {
+    return "SubscriptionStats{"
+        + "missedMessageCount=" + mMissedMessageCount
+        + ", fastForwardCount=" + mFastForwardCount
+        + ", discontinuityCount=" + mDiscontinuityCount
+        + ", resubscribeCount=" + mResubscribeCount
+        + ", conflatedCount=" + mConflatedCount
+        + ", suppressedCount=" + mSuppressedCount
+        + '}';
+  }
+}
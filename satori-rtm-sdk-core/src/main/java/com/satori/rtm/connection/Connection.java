@@ -7,6 +7,7 @@ import com.google.common.base.Strings;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.satori.rtm.Callback;
 import com.satori.rtm.model.Pdu;
@@ -15,8 +16,8 @@ import com.satori.rtm.model.PduRaw;
 import com.satori.rtm.transport.Transport;
 import com.satori.rtm.transport.TransportException;
 import com.satori.rtm.transport.TransportFactory;
+import com.satori.rtm.transport.DispatchingTransportListener;
 import com.satori.rtm.transport.TransportListener;
-import com.satori.rtm.utils.DispatcherProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
@@ -25,6 +26,7 @@ import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -45,6 +47,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Connection {
   private final static Logger LOG = LoggerFactory.getLogger(Connection.class);
+  private final static int RECEIVE_BUFFER_SIZE = (1 << 10);
   private final ConcurrentMap<String, ResponseWaiter> mResponseWaiters;
   private final AtomicInteger mIdCounter;
   private final Transport mTransport;
@@ -99,11 +102,36 @@ public class Connection {
     mUserListener = listener;
     TransportListener transListener = new InnerTransportListener(listener);
     if (null != dispatcher) {
-      transListener = DispatcherProxy.wrap(transListener, dispatcher);
+      transListener = new DispatchingTransportListener(transListener, dispatcher);
     }
     mTransport.connect(transListener);
   }
 
+  /**
+   * Connects to RTM and parses incoming PDUs in parallel.
+   * <p>
+   * Incoming messages are parsed on the {@code parsers} executor, so parsing doesn't delay reading
+   * from the socket or processing of the PDUs that are already parsed. The parsed PDUs and the
+   * other transport events are passed to the listener in the order in which they were received.
+   * If the listener falls behind by too many PDUs, the transport stops reading until it catches up.
+   *
+   * @param listener   {@link ConnectionListener} object
+   * @param dispatcher transport event dispatcher. If {@code null}, all events are fired from the parser threads.
+   * @param parsers    executor that parses incoming messages. If {@code null}, messages are parsed on the dispatcher.
+   * @throws TransportException the transport can't connect
+   */
+  public void connect(ConnectionListener listener, ExecutorService dispatcher,
+                      ExecutorService parsers) throws TransportException {
+    if (null == parsers) {
+      connect(listener, dispatcher);
+      return;
+    }
+    mUserListener = listener;
+    Executor target = (null != dispatcher) ? dispatcher : MoreExecutors.directExecutor();
+    mTransport.connect(new PipelinedTransportListener(
+        new InnerTransportListener(listener), mSerializer, parsers, target, RECEIVE_BUFFER_SIZE));
+  }
+
   /**
    * Returns the {@link ConnectionListener} for the current {@link Connection} object.
    *
@@ -199,12 +227,21 @@ public class Connection {
   }
 
   private void processIncomingPDU(String json) {
+    PduRaw pdu;
     try {
       checkNotNull(json);
       LOG.debug("[recv] " + json);
-      PduRaw pdu = mSerializer.parsePdu(json);
+      pdu = mSerializer.parsePdu(json);
       checkNotNull(pdu);
+    } catch (Exception e) {
+      mUserListener.onError(e);
+      return;
+    }
+    processIncomingPDU(pdu);
+  }
 
+  private void processIncomingPDU(PduRaw pdu) {
+    try {
       if (pdu.isUnsolicited()) {
         mUserListener.onUnsolicitedPDU(pdu);
         return;
@@ -338,7 +375,7 @@ public class Connection {
     }
   }
 
-  private class InnerTransportListener implements TransportListener {
+  private class InnerTransportListener implements PipelinedTransportListener.PduListener {
     private TransportListener mUserListener;
 
     InnerTransportListener(TransportListener userListener) {
@@ -364,6 +401,18 @@ public class Connection {
       processIncomingPDU(message);
     }
 
+    @Override
+    public void onPdu(PduRaw pdu) {
+      if (isDisposed) { return; }
+      processIncomingPDU(pdu);
+    }
+
+    @Override
+    public void onParseError(Exception ex) {
+      if (isDisposed) { return; }
+      Connection.this.mUserListener.onError(ex);
+    }
+
     @Override
     public void onTransportError(Exception ex) {
       if (isDisposed) { return; }
@@ -0,0 +1,172 @@
+package com.satori.rtm.connection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.transport.DispatchingTransportListener;
+import com.satori.rtm.transport.TransportListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Receives transport events in three stages:
+ *
+ * 1. The transport thread takes a sequence number for each event. It blocks while the reorder
+ *    buffer is full, which pushes back on the socket instead of buffering without bound.
+ * 2. Messages are parsed into PDUs on a pool of parser threads in parallel.
+ * 3. Parsed PDUs and the other transport events are passed to the dispatcher strictly in the
+ *    order of their sequence numbers, so PDUs of every subscription stay in order.
+ */
+class PipelinedTransportListener extends DispatchingTransportListener {
+  private final static Logger LOG = LoggerFactory.getLogger(PipelinedTransportListener.class);
+
+  private final PduListener mListener;
+  private final Serializer mSerializer;
+  private final Executor mParsers;
+  private final Executor mDispatcher;
+  private final AtomicReferenceArray<DispatchedTask> mSlots;
+  private final int mMask;
+  private final Semaphore mPermits;
+  private final AtomicLong mNextSequence = new AtomicLong();
+  private final AtomicInteger mWip = new AtomicInteger();
+  // accessed only by the thread that holds mWip
+  private long mNextDelivery = 0;
+
+  /*
+   * Transport listener that also accepts the PDUs parsed by the pipeline.
+   */
+  interface PduListener extends TransportListener {
+    void onPdu(PduRaw pdu);
+
+    void onParseError(Exception ex);
+  }
+
+  PipelinedTransportListener(PduListener listener, Serializer serializer, Executor parsers,
+                             Executor dispatcher, int bufferSize) {
+    super(listener, dispatcher);
+    checkArgument(0 < bufferSize && 0 == (bufferSize & (bufferSize - 1)),
+        "Buffer size must be a power of two: %s", bufferSize);
+    this.mListener = listener;
+    this.mSerializer = checkNotNull(serializer);
+    this.mParsers = checkNotNull(parsers);
+    this.mDispatcher = dispatcher;
+    this.mSlots = new AtomicReferenceArray<DispatchedTask>(bufferSize);
+    this.mMask = bufferSize - 1;
+    this.mPermits = new Semaphore(bufferSize);
+  }
+
+  @Override
+  public void onMessage(String message) {
+    long sequence = nextSequence();
+    try {
+      mParsers.execute(new ParseTask(sequence, message));
+    } catch (RejectedExecutionException ex) {
+      complete(sequence, new ParseErrorTask(mListener, ex));
+    }
+  }
+
+  @Override
+  protected void enqueue(DispatchedTask task) {
+    complete(nextSequence(), task);
+  }
+
+  private long nextSequence() {
+    // a permit guarantees that the slot of the new sequence number is already delivered
+    mPermits.acquireUninterruptibly();
+    return mNextSequence.getAndIncrement();
+  }
+
+  private void complete(long sequence, DispatchedTask task) {
+    mSlots.set((int) sequence & mMask, task);
+    drain();
+  }
+
+  private void drain() {
+    if (0 != mWip.getAndIncrement()) {
+      return;
+    }
+    int missed = 1;
+    while (true) {
+      while (true) {
+        int index = (int) mNextDelivery & mMask;
+        DispatchedTask task = mSlots.get(index);
+        if (null == task) {
+          break;
+        }
+        mSlots.set(index, null);
+        mNextDelivery++;
+        mPermits.release();
+        try {
+          mDispatcher.execute(task);
+        } catch (RejectedExecutionException ex) {
+          LOG.debug("Dispatcher is shut down, transport event is dropped");
+        }
+      }
+      missed = mWip.addAndGet(-missed);
+      if (0 == missed) {
+        return;
+      }
+    }
+  }
+
+  private class ParseTask implements Runnable {
+    private final long mSequence;
+    private final String mJson;
+
+    ParseTask(long sequence, String json) {
+      this.mSequence = sequence;
+      this.mJson = json;
+    }
+
+    @Override
+    public void run() {
+      DispatchedTask task;
+      try {
+        checkNotNull(mJson);
+        LOG.debug("[recv] " + mJson);
+        PduRaw pdu = mSerializer.parsePdu(mJson);
+        task = new PduTask(mListener, checkNotNull(pdu));
+      } catch (Exception ex) {
+        task = new ParseErrorTask(mListener, ex);
+      }
+      complete(mSequence, task);
+    }
+  }
+
+  private static final class PduTask extends DispatchedTask {
+    private final PduListener mListener;
+    private final PduRaw mPdu;
+
+    PduTask(PduListener listener, PduRaw pdu) {
+      this.mListener = listener;
+      this.mPdu = pdu;
+    }
+
+    @Override
+    protected void dispatch() {
+      mListener.onPdu(mPdu);
+    }
+  }
+
+  private static final class ParseErrorTask extends DispatchedTask {
+    private final PduListener mListener;
+    private final Exception mError;
+
+    ParseErrorTask(PduListener listener, Exception error) {
+      this.mListener = listener;
+      this.mError = error;
+    }
+
+    @Override
+    protected void dispatch() {
+      mListener.onParseError(mError);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.satori.rtm.model;
+
+/**
+ * Defines a method that reads a top-level field of a JSON object from an already parsed JSON
+ * element, without converting the rest of the element.
+ * <p>
+ * {@link AnyJson} implementations of the JSON libraries can implement this interface in addition
+ * to {@code AnyJson}, see {@link com.satori.rtm.FieldKeyExtractor}.
+ */
+public interface JsonFieldReader {
+  /**
+   * Returns the text of a top-level scalar field of a JSON object.
+   * <p>
+   * A string is returned unquoted and unescaped, a number as written in the JSON if the library
+   * keeps the text of numbers, and a boolean as {@code "true"} or {@code "false"}.
+   *
+   * @param name name of the field
+   * @return text of the field, or {@code null} if the JSON isn't an object, or the field is
+   * missing, {@code null}, an object or an array
+   */
+  String readScalarField(String name);
+}
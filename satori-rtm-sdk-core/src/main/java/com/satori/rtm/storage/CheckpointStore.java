@@ -0,0 +1,41 @@
+package com.satori.rtm.storage;
+
+import java.io.Closeable;
+
+/**
+ * Stores the last known positions of subscriptions, so that subscriptions can resume from them
+ * after the application restarts.
+ * <p>
+ * The RTM SDK calls {@link #save(String, String)} every time the position of a subscription with
+ * the {@link com.satori.rtm.SubscriptionMode#TRACK_POSITION} mode changes, on the SDK dispatcher
+ * thread. Implementations must make {@code save} fast, for example by only updating memory and
+ * writing the positions to durable storage in batches. {@link #remove(String)} is called when the
+ * subscription is removed.
+ *
+ * @see com.satori.rtm.RtmClientBuilder#setCheckpointStore(CheckpointStore)
+ * @see MappedFileCheckpointStore
+ */
+public interface CheckpointStore extends Closeable {
+  /**
+   * Returns the last saved position of a subscription.
+   *
+   * @param subscriptionId subscription id or channel name
+   * @return position, or {@code null} if there is no position for the subscription
+   */
+  String load(String subscriptionId);
+
+  /**
+   * Saves the position of a subscription.
+   *
+   * @param subscriptionId subscription id or channel name
+   * @param position       current position of the subscription
+   */
+  void save(String subscriptionId, String position);
+
+  /**
+   * Deletes the position of a subscription.
+   *
+   * @param subscriptionId subscription id or channel name
+   */
+  void remove(String subscriptionId);
+}
@@ -0,0 +1,244 @@
+package com.satori.rtm.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint store that keeps positions in memory and periodically writes them to a
+ * memory-mapped file.
+ * <p>
+ * {@link #save(String, String)} only updates memory, so tracking positions costs no I/O per
+ * message. Every flush interval, if any position has changed, a snapshot of all positions is
+ * written to the file. The file has two slots, and each snapshot overwrites the older one, so a
+ * crash in the middle of a write leaves the previous snapshot intact. A snapshot is protected by
+ * a CRC32 checksum, and when the store is opened it loads the newest valid snapshot.
+ * <p>
+ * A snapshot must fit in a slot. The default slot size of 1 MiB holds about 20 000 positions of
+ * subscriptions with short ids. The slot size of an existing file can't be changed.
+ * <p>
+ * For example:
+ * <pre>
+ * CheckpointStore store = new MappedFileCheckpointStore(new File("positions.dat"), scheduler, 1000);
+ * RtmClient client = new RtmClientBuilder(endpoint, appkey)
+ *     .setCheckpointStore(store)
+ *     .build();
+ * </pre>
+ */
+public class MappedFileCheckpointStore implements CheckpointStore {
+  private final static Logger LOG = LoggerFactory.getLogger(MappedFileCheckpointStore.class);
+  private static final int DEFAULT_SLOT_SIZE = 1 << 20;
+  // int length, long sequence, int checksum
+  private static final int HEADER_SIZE = 16;
+
+  private final Map<String, String> mPositions = new ConcurrentHashMap<String, String>();
+  private final AtomicBoolean mIsDirty = new AtomicBoolean();
+  private final Object mFlushLock = new Object();
+  private final FileChannel mChannel;
+  private final MappedByteBuffer mBuffer;
+  private final int mSlotSize;
+  private final ScheduledFuture<?> mFlushTask;
+  // guarded by mFlushLock
+  private long mSequence = 0;
+  private int mSlot = 1;
+  private boolean mIsClosed = false;
+
+  /**
+   * Opens the checkpoint store with the default slot size and loads the positions saved in
+   * the file.
+   *
+   * @param file                file to keep the positions in, created if it doesn't exist
+   * @param scheduler           scheduler that runs periodic flushes
+   * @param flushIntervalMillis interval between flushes in milliseconds
+   * @throws IOException if the file can't be opened or mapped
+   */
+  public MappedFileCheckpointStore(File file, ScheduledExecutorService scheduler,
+                                   long flushIntervalMillis) throws IOException {
+    this(file, scheduler, flushIntervalMillis, DEFAULT_SLOT_SIZE);
+  }
+
+  /**
+   * Opens the checkpoint store and loads the positions saved in the file.
+   *
+   * @param file                file to keep the positions in, created if it doesn't exist
+   * @param scheduler           scheduler that runs periodic flushes
+   * @param flushIntervalMillis interval between flushes in milliseconds
+   * @param slotSize            maximum size of a snapshot in bytes
+   * @throws IOException if the file can't be opened or mapped
+   */
+  public MappedFileCheckpointStore(File file, ScheduledExecutorService scheduler,
+                                   long flushIntervalMillis, int slotSize) throws IOException {
+    checkNotNull(file);
+    checkNotNull(scheduler);
+    checkArgument(flushIntervalMillis > 0, "Flush interval must be positive: %s",
+        flushIntervalMillis);
+    checkArgument(slotSize > HEADER_SIZE, "Slot size is too small: %s", slotSize);
+    this.mSlotSize = slotSize;
+    // FileChannel.open() needs Android API level 26
+    this.mChannel = new RandomAccessFile(file, "rw").getChannel();
+    try {
+      this.mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotSize);
+      load();
+    } catch (IOException ex) {
+      mChannel.close();
+      throw ex;
+    }
+    this.mFlushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+        } catch (IOException ex) {
+          LOG.error("Unable to flush checkpoints", ex);
+        }
+      }
+    }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public String load(String subscriptionId) {
+    return mPositions.get(subscriptionId);
+  }
+
+  @Override
+  public void save(String subscriptionId, String position) {
+    if (!position.equals(mPositions.put(subscriptionId, position))) {
+      mIsDirty.set(true);
+    }
+  }
+
+  @Override
+  public void remove(String subscriptionId) {
+    if (null != mPositions.remove(subscriptionId)) {
+      mIsDirty.set(true);
+    }
+  }
+
+  /**
+   * Writes the positions to the file right away if any of them has changed since the last flush.
+   *
+   * @throws IOException if the positions don't fit in a slot
+   */
+  public void flush() throws IOException {
+    synchronized (mFlushLock) {
+      if (mIsClosed || !mIsDirty.getAndSet(false)) {
+        return;
+      }
+      byte[] payload = serialize(new HashMap<String, String>(mPositions));
+      if (payload.length > mSlotSize - HEADER_SIZE) {
+        mIsDirty.set(true);
+        throw new IOException(String.format(
+            "Checkpoints take %d bytes and don't fit in a slot of %d bytes",
+            payload.length, mSlotSize));
+      }
+      int slot = 1 - mSlot;
+      int base = slot * mSlotSize;
+      long sequence = mSequence + 1;
+      // the header is written after the payload, the checksum covers both
+      mBuffer.position(base + HEADER_SIZE);
+      mBuffer.put(payload);
+      mBuffer.putInt(base, payload.length);
+      mBuffer.putLong(base + 4, sequence);
+      mBuffer.putInt(base + 12, checksum(sequence, payload));
+      mBuffer.force();
+      mSlot = slot;
+      mSequence = sequence;
+    }
+  }
+
+  /**
+   * Stops periodic flushes, writes the changed positions to the file and closes it.
+   *
+   * @throws IOException if the positions can't be written
+   */
+  @Override
+  public void close() throws IOException {
+    mFlushTask.cancel(false);
+    synchronized (mFlushLock) {
+      try {
+        flush();
+      } finally {
+        mIsClosed = true;
+        mChannel.close();
+      }
+    }
+  }
+
+  private void load() throws IOException {
+    long latest = 0;
+    byte[] snapshot = null;
+    for (int slot = 0; slot < 2; slot++) {
+      int base = slot * mSlotSize;
+      int length = mBuffer.getInt(base);
+      long sequence = mBuffer.getLong(base + 4);
+      int checksum = mBuffer.getInt(base + 12);
+      if (length <= 0 || length > mSlotSize - HEADER_SIZE || sequence <= latest) {
+        continue;
+      }
+      byte[] payload = new byte[length];
+      mBuffer.position(base + HEADER_SIZE);
+      mBuffer.get(payload);
+      if (checksum(sequence, payload) != checksum) {
+        LOG.warn("Checkpoint slot {} is corrupted, ignoring it", slot);
+        continue;
+      }
+      latest = sequence;
+      snapshot = payload;
+      mSlot = slot;
+    }
+    mSequence = latest;
+    if (null != snapshot) {
+      mPositions.putAll(deserialize(snapshot));
+    }
+  }
+
+  private static byte[] serialize(Map<String, String> positions) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(positions.size());
+    for (Map.Entry<String, String> entry : positions.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeUTF(entry.getValue());
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static Map<String, String> deserialize(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    int count = in.readInt();
+    Map<String, String> positions = new HashMap<String, String>();
+    for (int i = 0; i < count; i++) {
+      positions.put(in.readUTF(), in.readUTF());
+    }
+    return positions;
+  }
+
+  private static int checksum(long sequence, byte[] payload) {
+    CRC32 crc = new CRC32();
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      crc.update((int) (sequence >>> shift));
+    }
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,356 @@
+package com.satori.rtm.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records kept in memory-mapped segment files.
+ * <p>
+ * The log is a FIFO queue that survives a restart of the application. Records are appended to
+ * the last segment, and a new segment file is created when the last one is full. Records are
+ * read in the order in which they were appended. A read record stays in the log until it's
+ * committed with {@link #commit()}, and {@link #rewind()} makes all uncommitted records readable
+ * again. A segment file is deleted when all its records are committed.
+ * <p>
+ * Records are written to the mapped files right away, so they survive a crash of the
+ * application. The files are forced to the storage device when a segment is full and when the
+ * log is closed, so an operating system crash may lose the latest records.
+ * <p>
+ * The log is used by the offline mode of the RTM client, see
+ * {@link com.satori.rtm.RtmClientBuilder#setOfflineSpool(SegmentLog, int)}.
+ */
+public class SegmentLog implements Closeable {
+  private final static Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+  private static final String SUFFIX = ".seg";
+  // global position of the first uncommitted record
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  // int length, int checksum
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private final File mDirectory;
+  private final int mSegmentSize;
+  private final long mMaxBytes;
+  // guarded by this
+  private final TreeMap<Long, Segment> mSegments = new TreeMap<Long, Segment>();
+  private final Deque<Long> mReadEnds = new ArrayDeque<Long>();
+  private long mWritePos;
+  private long mReadPos;
+  private long mCommitPos;
+  private int mCount;
+  private boolean mIsClosed = false;
+
+  /**
+   * Opens the log in the directory and recovers the uncommitted records of the previous run.
+   *
+   * @param directory   directory for the segment files, created if it doesn't exist
+   * @param segmentSize size of a segment file in bytes, also the maximum size of a record
+   * @param maxBytes    maximum size of the uncommitted records, in bytes
+   * @throws IOException if the segment files can't be created or mapped
+   */
+  public SegmentLog(File directory, int segmentSize, long maxBytes) throws IOException {
+    checkNotNull(directory);
+    checkArgument(segmentSize > SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE,
+        "Segment size is too small: %s", segmentSize);
+    checkArgument(maxBytes > 0, "Maximum size must be positive: %s", maxBytes);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    this.mDirectory = directory;
+    this.mSegmentSize = segmentSize;
+    this.mMaxBytes = maxBytes;
+    recover();
+  }
+
+  /**
+   * Appends a record to the end of the log.
+   *
+   * @param record record bytes
+   * @throws IOException if the log is full or a new segment file can't be created
+   */
+  public synchronized void append(byte[] record) throws IOException {
+    checkOpen();
+    int size = RECORD_HEADER_SIZE + record.length;
+    checkArgument(size <= mSegmentSize - SEGMENT_HEADER_SIZE,
+        "Record of %s bytes doesn't fit in a segment", record.length);
+    if (mWritePos - mCommitPos + size > mMaxBytes) {
+      throw new IOException(String.format("Log is full: %d bytes", mWritePos - mCommitPos));
+    }
+    int offset = offsetOf(mWritePos);
+    if (0 == offset || offset + size > mSegmentSize) {
+      mSegments.lastEntry().getValue().mBuffer.force();
+      long base = (0 == offset) ? mWritePos : baseOf(mWritePos) + mSegmentSize;
+      openSegment(base);
+      mWritePos = base + SEGMENT_HEADER_SIZE;
+      offset = SEGMENT_HEADER_SIZE;
+    }
+    MappedByteBuffer buffer = segmentOf(mWritePos).mBuffer;
+    buffer.position(offset + RECORD_HEADER_SIZE);
+    buffer.put(record);
+    buffer.putInt(offset + 4, checksum(record));
+    // the length is written last, a record with a non-zero length is complete
+    buffer.putInt(offset, record.length);
+    mWritePos += size;
+    mCount++;
+  }
+
+  /**
+   * Reads the next record that wasn't read since the last {@link #rewind()}.
+   *
+   * @return record bytes, or {@code null} if all records are read
+   */
+  public synchronized byte[] next() {
+    checkOpen();
+    while (mReadPos < mWritePos) {
+      int offset = offsetOf(mReadPos);
+      if (0 == offset) {
+        mReadPos += SEGMENT_HEADER_SIZE;
+        continue;
+      }
+      Segment segment = segmentOf(mReadPos);
+      byte[] record = readRecord(segment, offset);
+      if (null == record) {
+        // the rest of the segment is empty
+        mReadPos = baseOf(mReadPos) + mSegmentSize;
+        continue;
+      }
+      mReadPos += RECORD_HEADER_SIZE + record.length;
+      mReadEnds.add(mReadPos);
+      return record;
+    }
+    return null;
+  }
+
+  /**
+   * Removes the oldest read record from the log.
+   *
+   * @throws IllegalStateException if there is no read record to commit
+   */
+  public synchronized void commit() {
+    checkOpen();
+    Long end = mReadEnds.poll();
+    if (null == end) {
+      throw new IllegalStateException("No record to commit");
+    }
+    mCommitPos = end;
+    mCount--;
+    // delete the segments that have no uncommitted records
+    dropCommittedSegments();
+    mSegments.firstEntry().getValue().mBuffer.putLong(0, mCommitPos);
+  }
+
+  /**
+   * Makes all uncommitted records readable again, starting from the oldest one.
+   */
+  public synchronized void rewind() {
+    checkOpen();
+    mReadPos = mCommitPos;
+    mReadEnds.clear();
+  }
+
+  /**
+   * Returns the number of uncommitted records.
+   *
+   * @return number of records in the log
+   */
+  public synchronized int size() {
+    return mCount;
+  }
+
+  /**
+   * Returns {@code true} if the log has no uncommitted records.
+   *
+   * @return {@code true} if the log is empty
+   */
+  public synchronized boolean isEmpty() {
+    return 0 == mCount;
+  }
+
+  /**
+   * Forces the segment files to the storage device and closes them.
+   */
+  @Override
+  public synchronized void close() {
+    if (mIsClosed) {
+      return;
+    }
+    mIsClosed = true;
+    for (Segment segment : mSegments.values()) {
+      segment.mBuffer.force();
+      segment.close();
+    }
+    mSegments.clear();
+  }
+
+  private void recover() throws IOException {
+    File[] files = mDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX);
+      }
+    });
+    if (null != files) {
+      for (File file : files) {
+        String name = file.getName();
+        try {
+          long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+          if (0 == base % mSegmentSize) {
+            openSegment(base);
+            continue;
+          }
+        } catch (NumberFormatException ignored) {
+          // not a segment of this log
+        }
+        LOG.warn("Ignoring unknown file {}", file);
+      }
+    }
+    if (mSegments.isEmpty()) {
+      openSegment(0);
+    }
+
+    // the commit position is written to the first segment, but a segment that couldn't be deleted
+    // stays in the directory with an older commit position, so the latest one wins
+    mCommitPos = mSegments.firstKey() + SEGMENT_HEADER_SIZE;
+    for (Map.Entry<Long, Segment> entry : mSegments.entrySet()) {
+      long header = entry.getValue().mBuffer.getLong(0);
+      if (header >= entry.getKey() + SEGMENT_HEADER_SIZE) {
+        mCommitPos = Math.max(mCommitPos, header);
+      }
+    }
+    dropCommittedSegments();
+    mReadPos = mCommitPos;
+    mWritePos = mCommitPos;
+    mCount = 0;
+    // scan the records to find the end of the log
+    long pos = mCommitPos;
+    while (true) {
+      Segment segment = segmentOf(pos);
+      if (null == segment) {
+        break;
+      }
+      int offset = offsetOf(pos);
+      if (0 == offset) {
+        pos += SEGMENT_HEADER_SIZE;
+        mWritePos = pos;
+        continue;
+      }
+      byte[] record = readRecord(segment, offset);
+      if (null != record) {
+        pos += RECORD_HEADER_SIZE + record.length;
+        mWritePos = pos;
+        mCount++;
+        continue;
+      }
+      // the rest of the segment is empty, continue with the next one if it exists
+      long next = baseOf(pos) + mSegmentSize;
+      if (!mSegments.containsKey(next)) {
+        break;
+      }
+      pos = next;
+    }
+    if (0 < mCount) {
+      LOG.info("Recovered {} records from {}", mCount, mDirectory);
+    }
+  }
+
+  // deletes the segments that have no uncommitted records
+  private void dropCommittedSegments() {
+    while (mSegments.size() > 1 && mSegments.firstKey() + mSegmentSize <= mCommitPos) {
+      Segment segment = mSegments.pollFirstEntry().getValue();
+      segment.close();
+      if (!segment.mFile.delete()) {
+        LOG.warn("Unable to delete segment {}", segment.mFile);
+      }
+    }
+  }
+
+  private byte[] readRecord(Segment segment, int offset) {
+    if (offset + RECORD_HEADER_SIZE > mSegmentSize) {
+      return null;
+    }
+    MappedByteBuffer buffer = segment.mBuffer;
+    int length = buffer.getInt(offset);
+    if (length <= 0 || offset + RECORD_HEADER_SIZE + length > mSegmentSize) {
+      return null;
+    }
+    byte[] record = new byte[length];
+    buffer.position(offset + RECORD_HEADER_SIZE);
+    buffer.get(record);
+    if (checksum(record) != buffer.getInt(offset + 4)) {
+      LOG.warn("Corrupted record in segment {} at offset {}", segment.mFile, offset);
+      return null;
+    }
+    return record;
+  }
+
+  private void openSegment(long base) throws IOException {
+    File file = new File(mDirectory, String.format("%019d%s", base, SUFFIX));
+    // FileChannel.open() needs Android API level 26
+    FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+    try {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+      mSegments.put(base, new Segment(file, channel, buffer));
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private Segment segmentOf(long pos) {
+    return mSegments.get(baseOf(pos));
+  }
+
+  private long baseOf(long pos) {
+    return pos - pos % mSegmentSize;
+  }
+
+  private int offsetOf(long pos) {
+    return (int) (pos % mSegmentSize);
+  }
+
+  private void checkOpen() {
+    if (mIsClosed) {
+      throw new IllegalStateException("Log is closed");
+    }
+  }
+
+  private static int checksum(byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+
+  private static class Segment {
+    final File mFile;
+    final FileChannel mChannel;
+    final MappedByteBuffer mBuffer;
+
+    Segment(File file, FileChannel channel, MappedByteBuffer buffer) {
+      this.mFile = file;
+      this.mChannel = channel;
+      this.mBuffer = buffer;
+    }
+
+    void close() {
+      try {
+        mChannel.close();
+      } catch (IOException ex) {
+        LOG.warn("Unable to close segment {}", mFile, ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Durable storage of subscription positions for the RTM SDK.
+ */
+package com.satori.rtm.storage;
@@ -0,0 +1,106 @@
+package com.satori.rtm.transport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link TransportListener} that forwards each transport event to another listener through an
+ * executor.
+ * <p>
+ * Every event is enqueued to the executor as a single task, so events are delivered in the order
+ * that the executor runs its tasks.
+ */
+public class DispatchingTransportListener implements TransportListener {
+  private static final Logger LOG = LoggerFactory.getLogger(DispatchingTransportListener.class);
+
+  private final TransportListener mListener;
+  private final Executor mDispatcher;
+
+  public DispatchingTransportListener(TransportListener listener, Executor dispatcher) {
+    this.mListener = checkNotNull(listener);
+    this.mDispatcher = checkNotNull(dispatcher);
+  }
+
+  @Override
+  public void onConnected() {
+    enqueue(new DispatchedTask() {
+      @Override
+      protected void dispatch() {
+        mListener.onConnected();
+      }
+    });
+  }
+
+  @Override
+  public void onDisconnected() {
+    enqueue(new DispatchedTask() {
+      @Override
+      protected void dispatch() {
+        mListener.onDisconnected();
+      }
+    });
+  }
+
+  @Override
+  public void onMessage(String message) {
+    enqueue(new MessageTask(mListener, message));
+  }
+
+  @Override
+  public void onTransportError(final Exception ex) {
+    enqueue(new DispatchedTask() {
+      @Override
+      protected void dispatch() {
+        mListener.onTransportError(ex);
+      }
+    });
+  }
+
+  @Override
+  public void onConnectingError(final Exception ex) {
+    enqueue(new DispatchedTask() {
+      @Override
+      protected void dispatch() {
+        mListener.onConnectingError(ex);
+      }
+    });
+  }
+
+  protected void enqueue(DispatchedTask task) {
+    mDispatcher.execute(task);
+  }
+
+  /**
+   * A task that logs failures of the listener instead of passing them to the executor.
+   */
+  protected abstract static class DispatchedTask implements Runnable {
+    @Override
+    public final void run() {
+      try {
+        dispatch();
+      } catch (RuntimeException ex) {
+        LOG.error("Dispatcher task is failed", ex);
+      }
+    }
+
+    protected abstract void dispatch();
+  }
+
+  private static final class MessageTask extends DispatchedTask {
+    private final TransportListener mListener;
+    private final String mMessage;
+
+    MessageTask(TransportListener listener, String message) {
+      this.mListener = listener;
+      this.mMessage = message;
+    }
+
+    @Override
+    protected void dispatch() {
+      mListener.onMessage(mMessage);
+    }
+  }
+}
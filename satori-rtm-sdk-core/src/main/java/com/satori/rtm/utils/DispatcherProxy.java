@@ -8,6 +8,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+/**
+ * @deprecated Reflective dispatching is slow on the per-frame path. Use
+ * {@link com.satori.rtm.transport.DispatchingTransportListener}.
+ */
+@Deprecated
 public class DispatcherProxy {
   @SuppressWarnings("unchecked")
   public static <T> T wrap(T underlying, ExecutorService pool) {
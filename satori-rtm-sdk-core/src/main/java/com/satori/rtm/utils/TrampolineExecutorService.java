@@ -7,76 +7,94 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.AbstractExecutorService;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes tasks sequentially in first-in first-out order on the threads that submit them.
+ * <p>
+ * The first thread that finds the executor idle becomes the drainer and runs its own task and
+ * every task that other threads (or the running tasks themselves) enqueue in the meantime. Other
+ * threads only enqueue their task and return. Both the queue and the hand-off between drainers
+ * are lock-free, so producers never block each other.
+ */
 public class TrampolineExecutorService extends AbstractExecutorService
     implements ListeningExecutorService {
   private static final Logger LOG = LoggerFactory.getLogger(TrampolineExecutorService.class);
 
-  private final BlockingQueue<Runnable> mQueue;
+  private final Queue<Runnable> mQueue;
   /**
-   * Lock used whenever accessing the state variables
+   * Number of tasks that are enqueued but not yet taken by a drainer. The thread that moves the
+   * counter away from zero owns the queue until it brings the counter back to zero.
    */
-  private final Lock lock = new ReentrantLock();
-  private final Condition termination = lock.newCondition();
-  private final AtomicBoolean working;
-  private boolean shutdown = false;
+  private final AtomicInteger mPending;
+  private final Object mTermination = new Object();
+  private volatile boolean mShutdown = false;
 
   public TrampolineExecutorService() {
-    mQueue = new LinkedBlockingDeque<Runnable>();
-    working = new AtomicBoolean(false);
+    mQueue = new ConcurrentLinkedQueue<Runnable>();
+    mPending = new AtomicInteger(0);
   }
 
   @Override
   public void execute(Runnable command) {
-    startTask();
-    try {
-      mQueue.add(command);
-      while (0 < mQueue.size()) {
-        if (!working.compareAndSet(false, true)) {
-          return;
-        }
+    if (mShutdown) {
+      throw new RejectedExecutionException("Executor already shutdown");
+    }
+    mQueue.offer(command);
+    if (0 != mPending.getAndIncrement()) {
+      // another thread is draining the queue and will run the command
+      return;
+    }
+    drain();
+  }
 
+  private void drain() {
+    int missed = 1;
+    Error error = null;
+    while (true) {
+      // run the batch of tasks we know about without touching the shared counter
+      for (int i = 0; i < missed; i++) {
         Runnable action = mQueue.poll();
-        if (null == action) {
-          continue;
+        try {
+          action.run();
+        } catch (RuntimeException ex) {
+          LOG.error("Dispatcher task is failed", ex);
+        } catch (Error err) {
+          // the drainer owns the queue, it runs the rest of the tasks before rethrowing
+          LOG.error("Dispatcher task is failed", err);
+          if (null == error) {
+            error = err;
+          }
         }
-        action.run();
-
-        working.set(false);
       }
-    } finally {
-      endTask();
+      missed = mPending.addAndGet(-missed);
+      if (0 == missed) {
+        break;
+      }
+    }
+    if (mShutdown) {
+      signalTermination();
+    }
+    if (null != error) {
+      throw error;
     }
   }
 
   @Override
   public boolean isShutdown() {
-    lock.lock();
-    try {
-      return shutdown;
-    } finally {
-      lock.unlock();
-    }
+    return mShutdown;
   }
 
   @Override
   public void shutdown() {
-    lock.lock();
-    try {
-      shutdown = true;
-    } finally {
-      lock.unlock();
-    }
+    mShutdown = true;
+    signalTermination();
   }
 
   @Override
@@ -87,31 +105,24 @@ public class TrampolineExecutorService extends AbstractExecutorService
 
   @Override
   public boolean isTerminated() {
-    lock.lock();
-    try {
-      return shutdown && mQueue.size() == 0;
-    } finally {
-      lock.unlock();
-    }
+    return mShutdown && 0 == mPending.get();
   }
 
   @Override
   public boolean awaitTermination(long timeout, TimeUnit unit)
       throws InterruptedException {
-    long nanos = unit.toNanos(timeout);
-    lock.lock();
-    try {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (mTermination) {
       while (true) {
         if (isTerminated()) {
           return true;
-        } else if (nanos <= 0) {
+        }
+        long nanos = deadline - System.nanoTime();
+        if (nanos <= 0) {
           return false;
-        } else {
-          nanos = termination.awaitNanos(nanos);
         }
+        TimeUnit.NANOSECONDS.timedWait(mTermination, nanos);
       }
-    } finally {
-      lock.unlock();
     }
   }
 
@@ -135,25 +146,9 @@ public class TrampolineExecutorService extends AbstractExecutorService
     return future;
   }
 
-  private void startTask() {
-    lock.lock();
-    try {
-      if (isShutdown()) {
-        throw new RejectedExecutionException("Executor already shutdown");
-      }
-    } finally {
-      lock.unlock();
-    }
-  }
-
-  private void endTask() {
-    lock.lock();
-    try {
-      if (isTerminated()) {
-        termination.signalAll();
-      }
-    } finally {
-      lock.unlock();
+  private void signalTermination() {
+    synchronized (mTermination) {
+      mTermination.notifyAll();
     }
   }
 
@@ -7,6 +7,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
+/**
+ * @deprecated The RTM SDK guards user listeners with explicit wrappers and doesn't use this class
+ * anymore.
+ */
+@Deprecated
 public class TryCatchProxy {
   @SuppressWarnings("unchecked")
   public static <T> T wrap(final Object target, Class<T> contract) {
@@ -0,0 +1,67 @@
+package com.satori.rtm.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads of JDK 21+ from code compiled for older Java versions.
+ * <p>
+ * The API is looked up reflectively once, so the same binary keeps working on older JVMs where
+ * {@link #isSupported()} returns {@code false}.
+ */
+public final class VirtualThreads {
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builderClass.getMethod("name", String.class, long.class);
+      factory = builderClass.getMethod("factory");
+    } catch (Exception ex) {
+      LOG.debug("Virtual threads aren't supported by this JVM");
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private VirtualThreads() { }
+
+  /**
+   * Returns {@code true} if the JVM supports virtual threads.
+   *
+   * @return {@code true} if virtual threads are supported, otherwise {@code false}
+   */
+  public static boolean isSupported() {
+    return null != FACTORY;
+  }
+
+  /**
+   * Creates a factory of virtual threads named {@code prefix0}, {@code prefix1} and so on.
+   *
+   * @param prefix thread name prefix
+   * @return thread factory, or {@code null} if virtual threads aren't supported
+   */
+  public static ThreadFactory newThreadFactory(String prefix) {
+    if (!isSupported()) {
+      return null;
+    }
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = NAME.invoke(builder, prefix, 0L);
+      return (ThreadFactory) FACTORY.invoke(builder);
+    } catch (Exception ex) {
+      LOG.warn("Unable to create a virtual thread factory", ex);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.satori.rtm.model.PublishRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ConflatingPublisherTest {
+  private ExtendedRtmClient mClient;
+  private ScheduledExecutorService mScheduler;
+  @Captor
+  private ArgumentCaptor<Collection<PublishRequest<Object>>> mBatches;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    mClient = mock(ExtendedRtmClient.class);
+    mScheduler = mock(ScheduledExecutorService.class);
+  }
+
+  @Test
+  public void publishesOnlyLatestMessagePerChannel() {
+    ConflatingPublisher publisher = new ConflatingPublisher(mClient, mScheduler, 50, 100, Ack.NO);
+
+    publisher.publish("a", "a1");
+    publisher.publish("b", "b1");
+    publisher.publish("a", "a2");
+    publisher.publish("a", "a3");
+    publisher.flush();
+
+    assertThat(publishedMessages(1).get(0), contains("a:a3", "b:b1"));
+    assertThat(publisher.getConflatedCount(), equalTo(2L));
+    assertThat(publisher.getPublishedCount(), equalTo(2L));
+  }
+
+  @Test
+  public void flushesWhenChangeBudgetIsReached() {
+    ConflatingPublisher publisher = new ConflatingPublisher(mClient, mScheduler, 50, 2, Ack.NO);
+
+    publisher.publish("a", "a1");
+    publisher.publish("a", "a2");
+    verify(mClient, never())
+        .publishBatch(ArgumentMatchers.<PublishRequest<Object>>anyCollection(), eq(Ack.NO));
+
+    publisher.publish("b", "b1");
+    assertThat(publishedMessages(1).get(0), contains("a:a2", "b:b1"));
+  }
+
+  @Test
+  public void skipsEmptyFlush() {
+    ConflatingPublisher publisher = new ConflatingPublisher(mClient, mScheduler, 50, 2, Ack.NO);
+    publisher.flush();
+    verify(mClient, never())
+        .publishBatch(ArgumentMatchers.<PublishRequest<Object>>anyCollection(), eq(Ack.NO));
+  }
+
+  @Test
+  public void stopFlushesWaitingMessages() {
+    ConflatingPublisher publisher = new ConflatingPublisher(mClient, mScheduler, 50, 100, Ack.NO);
+    publisher.start();
+    verify(mScheduler).scheduleAtFixedRate(any(Runnable.class), eq(50L), eq(50L),
+        eq(TimeUnit.MILLISECONDS));
+
+    publisher.publish("a", "a1");
+    publisher.stop();
+
+    assertThat(publishedMessages(1).get(0), contains("a:a1"));
+    verify(mScheduler, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(),
+        eq(TimeUnit.MILLISECONDS));
+  }
+
+  private List<List<String>> publishedMessages(int batches) {
+    verify(mClient, times(batches)).publishBatch(mBatches.capture(), eq(Ack.NO));
+    List<List<String>> result = new ArrayList<List<String>>();
+    for (Collection<PublishRequest<Object>> batch : mBatches.getAllValues()) {
+      List<String> messages = new ArrayList<String>();
+      for (PublishRequest<Object> request : batch) {
+        messages.add(request.getChannel() + ":" + request.getMessage());
+      }
+      result.add(messages);
+    }
+    return result;
+  }
+}
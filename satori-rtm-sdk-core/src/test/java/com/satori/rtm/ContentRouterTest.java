@@ -0,0 +1,122 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.JsonFieldReader;
+import com.satori.rtm.model.SubscriptionData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentMatchers;
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class ContentRouterTest {
+  @Test
+  public void extractsTopLevelField() {
+    FieldKeyExtractor type = new FieldKeyExtractor("type");
+    assertThat(type.getKey(json("{\"type\":\"trade\",\"price\":10}")), equalTo("trade"));
+    assertThat(type.getKey(
+        json("{ \"nested\" : {\"type\":\"inner\"}, \"list\":[1,\"]\"], \"type\" : \"outer\" }")),
+        equalTo("outer"));
+    assertThat(new FieldKeyExtractor("id").getKey(json("{\"id\":42,\"ok\":true}")),
+        equalTo("42"));
+    assertThat(new FieldKeyExtractor("ok").getKey(json("{\"id\":42,\"ok\":true}")),
+        equalTo("true"));
+    assertThat(new FieldKeyExtractor("id").getKey(json("{\"id\":1.50}")), equalTo("1.50"));
+    assertThat(type.getKey(json("{\"type\":\"a\\\"b\\u0041\"}")), equalTo("a\"bA"));
+    assertThat(type.getKey(json("{\"type\":null}")), nullValue());
+    assertThat(type.getKey(json("{\"type\":{\"a\":1}}")), nullValue());
+    assertThat(type.getKey(json("{\"other\":1}")), nullValue());
+    assertThat(type.getKey(json("\"text\"")), nullValue());
+    assertThat(type.getKey(json("{\"type\":\"trunc")), nullValue());
+  }
+
+  @Test
+  public void keepsLargeIntegerKeys() {
+    FieldKeyExtractor id = new FieldKeyExtractor("id");
+    // 2^53 + 1 isn't representable as a double
+    assertThat(id.getKey(json("{\"id\":9007199254740993}")), equalTo("9007199254740993"));
+    assertThat(id.getKey(json("{\"id\":123456789012345678901234567890}")),
+        equalTo("123456789012345678901234567890"));
+  }
+
+  @Test
+  public void readsFieldThroughJsonLibrary() {
+    AnyJson message = mock(AnyJson.class,
+        withSettings().extraInterfaces(JsonFieldReader.class));
+    when(((JsonFieldReader) message).readScalarField("type")).thenReturn("trade");
+
+    assertThat(new FieldKeyExtractor("type").getKey(message), equalTo("trade"));
+    verify(message, never()).convertToType(ArgumentMatchers.<Class<Object>>any());
+  }
+
+  @Test
+  public void routesMessagesByKey() {
+    MessageHandler trades = mock(MessageHandler.class);
+    MessageHandler quotes = mock(MessageHandler.class);
+    MessageHandler other = mock(MessageHandler.class);
+    ContentRouter router = new ContentRouter(new FieldKeyExtractor("type"))
+        .addRoute("trade", trades)
+        .addRoute("quote", quotes)
+        .setDefaultHandler(other);
+
+    AnyJson trade = json("{\"type\":\"trade\"}");
+    AnyJson quote = json("{\"type\":\"quote\"}");
+    AnyJson unknown = json("{\"type\":\"news\"}");
+    SubscriptionData data = data(trade, quote, unknown);
+    router.onSubscriptionData(data);
+
+    verify(trades).onMessage(data, trade);
+    verify(quotes).onMessage(data, quote);
+    verify(other).onMessage(data, unknown);
+    verify(trades, never()).onMessage(data, quote);
+  }
+
+  @Test
+  public void countsUnroutedMessagesAndSurvivesHandlerErrors() {
+    MessageHandler failing = mock(MessageHandler.class);
+    doThrow(new IllegalStateException("failed"))
+        .when(failing).onMessage(any(SubscriptionData.class), any(AnyJson.class));
+    ContentRouter router = new ContentRouter(new FieldKeyExtractor("type"))
+        .addRoute("trade", failing);
+
+    AnyJson first = json("{\"type\":\"trade\"}");
+    AnyJson second = json("{\"type\":\"trade\"}");
+    SubscriptionData data = data(first, json("{}"), second);
+    router.onSubscriptionData(data);
+
+    verify(failing).onMessage(data, first);
+    verify(failing).onMessage(data, second);
+    assertThat(router.getUnroutedCount(), equalTo(1L));
+  }
+
+  private static SubscriptionData data(AnyJson... messages) {
+    return new SubscriptionData("market", "1", Arrays.asList(messages), null);
+  }
+
+  private static AnyJson json(final String text) {
+    return new AnyJson() {
+      @Override
+      public <T> T convertToType(Class<T> clazz) {
+        // the extractor must not convert the message
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public String toString() {
+        return text;
+      }
+    };
+  }
+}
@@ -0,0 +1,262 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import com.satori.rtm.model.SubscriptionInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class HistoryBackfillTest {
+  private static final long IDLE_TIMEOUT = 1000;
+
+  private RtmClient mClient;
+  private ScheduledExecutorService mScheduler;
+  private FakeTicker mTicker;
+  private List<String> mReceived;
+  private SubscriptionListener mListener;
+
+  @Before
+  public void setUp() {
+    mClient = mock(RtmClient.class);
+    mScheduler = mock(ScheduledExecutorService.class);
+    mTicker = new FakeTicker();
+    mReceived = new ArrayList<String>();
+    mListener = new SubscriptionAdapter() {
+      @Override
+      public void onSubscriptionData(SubscriptionData data) {
+        mReceived.add(data.getPosition());
+      }
+    };
+  }
+
+  @Test
+  public void splitsRangeIntoWindows() {
+    create(1000, 1099, 4).start(mListener);
+
+    List<SubscriptionConfig> configs = subscriptions(4);
+    List<String> windows = new ArrayList<String>();
+    for (SubscriptionConfig config : configs) {
+      SubscribeRequest request = config.createSubscribeRequest("id");
+      windows.add(request.getTimestamp() + "-" + request.getEndTimestamp());
+      assertThat(request.getFilter(), equalTo("select * from `channel`"));
+    }
+    assertThat(windows, contains("1000-1024", "1025-1049", "1050-1074", "1075-1099"));
+  }
+
+  @Test
+  public void mergesWindowsInOrder() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 3).start(mListener);
+    List<SubscriptionListener> windows = listeners(subscriptions(3));
+
+    data(windows.get(1), "1:a");
+    data(windows.get(0), "0:a");
+    data(windows.get(2), "2:a");
+    subscribed(windows.get(1));
+    idle();
+    data(windows.get(0), "0:b");
+    assertThat(mReceived, contains("0:a", "0:b"));
+
+    subscribed(windows.get(0));
+    idle();
+    assertThat(mReceived, contains("0:a", "0:b", "1:a", "2:a"));
+    assertThat(result.isDone(), is(false));
+
+    data(windows.get(2), "2:b");
+    subscribed(windows.get(2));
+    idle();
+    assertThat(mReceived, contains("0:a", "0:b", "1:a", "2:a", "2:b"));
+    assertThat(result.isDone(), is(true));
+  }
+
+  @Test
+  public void overflowingWindowIsReadAgainAsHead() throws Exception {
+    HistoryBackfill backfill = create(0, 99, 2).setMaxBufferedMessages(1);
+    backfill.start(mListener);
+    List<SubscriptionConfig> configs = subscriptions(2);
+    List<SubscriptionListener> windows = listeners(configs);
+
+    String id = subscriptionIds(2).get(1);
+    data(windows.get(1), "1:a");
+    data(windows.get(1), "1:b");
+    verify(mClient).removeSubscription(id);
+    assertThat(backfill.getBufferedMessages(), equalTo(0));
+
+    // data of the removed subscription is ignored
+    data(windows.get(1), "1:c");
+    subscribed(windows.get(0));
+    idle();
+    SubscriptionListener retry = listeners(subscriptions(3)).get(2);
+    data(retry, "1:a");
+    assertThat(mReceived, contains("1:a"));
+  }
+
+  @Test
+  public void windowWithDataIsNotIdle() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 1).start(mListener);
+    SubscriptionListener window = listeners(subscriptions(1)).get(0);
+
+    // the timeout doesn't run until the subscription is established
+    idle();
+    subscribed(window);
+    mTicker.advance(IDLE_TIMEOUT - 1);
+    data(window, "0:a");
+    mTicker.advance(IDLE_TIMEOUT - 1);
+    runIdleCheck();
+    assertThat(result.isDone(), is(false));
+
+    idle();
+    assertThat(result.isDone(), is(true));
+  }
+
+  @Test
+  public void subscriptionErrorFailsBackfill() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 2).start(mListener);
+    List<SubscriptionListener> windows = listeners(subscriptions(2));
+
+    windows.get(1).onSubscriptionError(new SubscriptionError("id", "error", "reason"));
+    verify(mClient, times(2)).removeSubscription(anyString());
+    assertFailed(result);
+  }
+
+  @Test
+  public void fastForwardFailsBackfill() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 2).start(mListener);
+    List<SubscriptionListener> windows = listeners(subscriptions(2));
+
+    windows.get(0).onSubscriptionInfo(
+        new SubscriptionInfo("id", "fast_forward", "Subscription was fast-forwarded", null));
+    verify(mClient, times(2)).removeSubscription(anyString());
+    assertFailed(result);
+  }
+
+  @Test
+  public void failedSubscribeFailsBackfill() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 2).start(mListener);
+    List<SubscriptionListener> windows = listeners(subscriptions(2));
+
+    windows.get(1).onEnterFailed();
+    verify(mClient, times(2)).removeSubscription(anyString());
+    assertFailed(result);
+  }
+
+  @Test
+  public void cancellingResultRemovesSubscriptions() throws Exception {
+    ListenableFuture<Void> result = create(0, 99, 2).start(mListener);
+    List<String> ids = subscriptionIds(2);
+
+    result.cancel(false);
+    verify(mClient).removeSubscription(ids.get(0));
+    verify(mClient).removeSubscription(ids.get(1));
+  }
+
+  @Test
+  public void subscriptionIdsAreUniquePerBackfill() {
+    create(0, 99, 1).start(mListener);
+    create(0, 99, 1).start(mListener);
+
+    List<String> ids = subscriptionIds(2);
+    assertThat(ids.get(0), startsWith("channel.backfill."));
+    assertThat(ids.get(0), endsWith(".0.1"));
+    assertThat(ids.get(1), not(equalTo(ids.get(0))));
+  }
+
+  private HistoryBackfill create(long start, long end, int windows) {
+    return new HistoryBackfill(mClient, "channel", start, end, windows, mScheduler,
+        IDLE_TIMEOUT, mTicker);
+  }
+
+  private void idle() {
+    mTicker.advance(IDLE_TIMEOUT);
+    runIdleCheck();
+  }
+
+  private void runIdleCheck() {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(mScheduler).scheduleWithFixedDelay(captor.capture(), anyLong(), anyLong(),
+        eq(TimeUnit.MILLISECONDS));
+    captor.getValue().run();
+  }
+
+  private List<SubscriptionConfig> subscriptions(int count) {
+    ArgumentCaptor<SubscriptionConfig> captor = ArgumentCaptor.forClass(SubscriptionConfig.class);
+    verify(mClient, times(count)).createSubscription(anyString(), captor.capture());
+    return captor.getAllValues();
+  }
+
+  private List<String> subscriptionIds(int count) {
+    ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+    verify(mClient, times(count)).createSubscription(captor.capture(),
+        any(SubscriptionConfig.class));
+    return captor.getAllValues();
+  }
+
+  private static List<SubscriptionListener> listeners(List<SubscriptionConfig> configs) {
+    List<SubscriptionListener> listeners = new ArrayList<SubscriptionListener>();
+    for (SubscriptionConfig config : configs) {
+      listeners.add(config.getUserListener());
+    }
+    return listeners;
+  }
+
+  private static void data(SubscriptionListener listener, String position) {
+    listener.onSubscriptionData(new SubscriptionData("id", position,
+        Arrays.asList(mock(AnyJson.class)), null));
+  }
+
+  private static void subscribed(SubscriptionListener listener) {
+    listener.onEnterSubscribed(mock(SubscribeRequest.class), new SubscribeReply("id", null));
+  }
+
+  private static void assertFailed(ListenableFuture<Void> result) throws InterruptedException {
+    try {
+      result.get();
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause() instanceof IllegalStateException, is(true));
+      return;
+    }
+    throw new AssertionError("Backfill must fail");
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos = 0;
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+
+    void advance(long millis) {
+      mNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.ReadReply;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.WriteReply;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class KeyValueCacheTest {
+  private RtmClient mClient;
+  private FakeTicker mTicker;
+
+  @Before
+  public void setUp() {
+    mClient = mock(RtmClient.class);
+    mTicker = new FakeTicker();
+    when(mClient.read("key"))
+        .thenReturn(reply("100:1"))
+        .thenReturn(reply("100:2"))
+        .thenReturn(reply("100:3"));
+  }
+
+  @Test
+  public void cachesReadsUntilTtlExpires() throws Exception {
+    KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, false, mTicker);
+
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+    verify(mClient, times(1)).read("key");
+
+    mTicker.advance(1000);
+    assertThat(position(cache.read("key")), equalTo("100:2"));
+  }
+
+  @Test
+  public void failedReadsAreNotCached() throws Exception {
+    when(mClient.read("key"))
+        .thenReturn(
+            Futures.<Pdu<ReadReply>>immediateFailedFuture(new IllegalStateException("failed")))
+        .thenReturn(reply("100:1"));
+    KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, false, mTicker);
+
+    assertThat(cache.read("key").isDone(), is(true));
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+    assertThat(cache.size(), equalTo(1L));
+  }
+
+  @Test
+  public void readsSeeOwnWrites() throws Exception {
+    SettableFuture<Pdu<WriteReply>> write = SettableFuture.create();
+    when(mClient.write("key", "value", Ack.YES)).thenReturn(write);
+    KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, false, mTicker);
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+
+    cache.write("key", "value", Ack.YES);
+    ListenableFuture<Pdu<ReadReply>> read = cache.read("key");
+    assertThat(read.isDone(), is(false));
+
+    write.set(new Pdu<WriteReply>("rtm/write/ok", mock(WriteReply.class)));
+    assertThat(position(read), equalTo("100:2"));
+    assertThat(position(cache.read("key")), equalTo("100:2"));
+    verify(mClient, times(2)).read("key");
+  }
+
+  @Test
+  public void subscriptionRefreshesEntry() throws Exception {
+    KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, true, mTicker);
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+    ArgumentCaptor<String> id = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<SubscriptionConfig> config = ArgumentCaptor.forClass(SubscriptionConfig.class);
+    verify(mClient).createSubscription(id.capture(), config.capture());
+    SubscriptionListener listener = config.getValue().getUserListener();
+
+    AnyJson message = mock(AnyJson.class);
+    listener.onSubscriptionData(new SubscriptionData(id.getValue(), "100:5",
+        Arrays.asList(message), null));
+    ReadReply reply = cache.read("key").get().getBody();
+    assertThat(reply.getPosition(), equalTo("100:5"));
+    assertThat(reply.getMessage(), sameInstance(message));
+
+    // older data doesn't replace the entry
+    listener.onSubscriptionData(new SubscriptionData(id.getValue(), "100:4",
+        Arrays.asList(mock(AnyJson.class)), null));
+    assertThat(position(cache.read("key")), equalTo("100:5"));
+    verify(mClient, times(1)).read("key");
+
+    cache.invalidate("key");
+    verify(mClient).removeSubscription(id.getValue());
+  }
+
+  @Test
+  public void dataDuringPendingReadReadsKeyAgain() throws Exception {
+    SettableFuture<Pdu<ReadReply>> pending = SettableFuture.create();
+    when(mClient.read("key"))
+        .thenReturn(pending)
+        .thenReturn(reply("100:7"));
+    KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, true, mTicker);
+    ListenableFuture<Pdu<ReadReply>> first = cache.read("key");
+    ArgumentCaptor<String> id = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<SubscriptionConfig> config = ArgumentCaptor.forClass(SubscriptionConfig.class);
+    verify(mClient).createSubscription(id.capture(), config.capture());
+    SubscriptionListener listener = config.getValue().getUserListener();
+
+    listener.onSubscriptionData(new SubscriptionData(id.getValue(), "100:5",
+        Arrays.asList(mock(AnyJson.class)), null));
+    listener.onSubscriptionData(new SubscriptionData(id.getValue(), "100:6",
+        Arrays.asList(mock(AnyJson.class)), null));
+    ListenableFuture<Pdu<ReadReply>> second = cache.read("key");
+    assertThat(second.isDone(), is(false));
+
+    // the pending read may miss the messages, so the key is read once more after it
+    pending.set(reply("100:1").get());
+    assertThat(position(first), equalTo("100:1"));
+    assertThat(position(second), equalTo("100:7"));
+    assertThat(position(cache.read("key")), equalTo("100:7"));
+    verify(mClient, times(2)).read("key");
+  }
+
+  @Test
+  public void evictionRemovesSubscription() throws Exception {
+    when(mClient.read(anyString())).thenReturn(reply("100:1"));
+    KeyValueCache cache = new KeyValueCache(mClient, 1, 1000, true, mTicker);
+    cache.read("first");
+    cache.read("second");
+
+    verify(mClient, times(2)).createSubscription(anyString(), any(SubscriptionConfig.class));
+    verify(mClient).removeSubscription("kv-cache.1");
+  }
+
+  @Test
+  public void evictionWhileSubscribingRemovesSubscriptionOnce() throws Exception {
+    final KeyValueCache cache = new KeyValueCache(mClient, 10, 1000, true, mTicker);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        cache.invalidate("key");
+        return null;
+      }
+    }).when(mClient).createSubscription(anyString(), any(SubscriptionConfig.class));
+
+    assertThat(position(cache.read("key")), equalTo("100:1"));
+    verify(mClient, times(1)).removeSubscription("kv-cache.1");
+  }
+
+  private static ListenableFuture<Pdu<ReadReply>> reply(String position) {
+    ReadReply reply = new ReadReply();
+    reply.setPosition(position);
+    return Futures.immediateFuture(new Pdu<ReadReply>("rtm/read/ok", reply));
+  }
+
+  private static String position(ListenableFuture<Pdu<ReadReply>> future) throws Exception {
+    return future.get().getBody().getPosition();
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos = 0;
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+
+    void advance(long millis) {
+      mNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.connection.Serializer;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import com.satori.rtm.storage.SegmentLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+@RunWith(JUnit4.class)
+public class OfflineSpoolTest {
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  private final FakeSerializer mSerializer = new FakeSerializer();
+  private final List<SettableFuture<Pdu<PublishReply>>> mReplies =
+      new ArrayList<SettableFuture<Pdu<PublishReply>>>();
+  private Connection mConnection;
+  private SegmentLog mLog;
+
+  @Before
+  public void setUp() throws IOException {
+    mConnection = mock(Connection.class);
+    when(mConnection.send(eq("rtm/publish"), any(), eq(PublishReply.class))).thenAnswer(
+        new Answer<ListenableFuture<Pdu<PublishReply>>>() {
+          @Override
+          public ListenableFuture<Pdu<PublishReply>> answer(InvocationOnMock invocation) {
+            SettableFuture<Pdu<PublishReply>> reply = SettableFuture.create();
+            mReplies.add(reply);
+            return reply;
+          }
+        });
+    mLog = new SegmentLog(mFolder.getRoot(), 4096, 1 << 20);
+  }
+
+  @After
+  public void tearDown() {
+    mLog.close();
+  }
+
+  @Test
+  public void replaysInOrderWithinWindow() throws Exception {
+    RtmService service = createService(2);
+    List<ListenableFuture<Pdu<PublishReply>>> results =
+        new ArrayList<ListenableFuture<Pdu<PublishReply>>>();
+    for (int i = 0; i < 3; i++) {
+      results.add(publish(service, "message-" + i));
+    }
+
+    service.onConnected(mConnection);
+    assertThat(mReplies.size(), equalTo(2));
+
+    // a reply to a later request waits for the earlier one
+    mReplies.get(1).set(reply("2"));
+    assertThat(results.get(1).isDone(), is(false));
+    assertThat(mReplies.size(), equalTo(2));
+
+    mReplies.get(0).set(reply("1"));
+    assertThat(results.get(0).get().getBody().getPosition(), equalTo("1"));
+    assertThat(results.get(1).get().getBody().getPosition(), equalTo("2"));
+    assertThat(mReplies.size(), equalTo(3));
+
+    mReplies.get(2).set(reply("3"));
+    assertThat(results.get(2).get().getBody().getPosition(), equalTo("3"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void requestsDuringReplayAreSpooled() throws Exception {
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> first = publish(service, "first");
+    service.onConnected(mConnection);
+
+    ListenableFuture<Pdu<PublishReply>> second = publish(service, "second");
+    assertThat(mReplies.size(), equalTo(1));
+
+    mReplies.get(0).set(reply("1"));
+    mReplies.get(1).set(reply("2"));
+    assertThat(first.get().getBody().getPosition(), equalTo("1"));
+    assertThat(second.get().getBody().getPosition(), equalTo("2"));
+
+    // the spool is empty, new requests are sent right away
+    publish(service, "third");
+    assertThat(mReplies.size(), equalTo(3));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void resendsUnrepliedRequestsAfterReconnect() throws Exception {
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> result = publish(service, "message");
+    service.onConnected(mConnection);
+    service.onDisconnected();
+    mReplies.get(0).setException(new IllegalStateException("Connection is lost"));
+    assertThat(result.isDone(), is(false));
+
+    service.onConnected(mConnection);
+    verify(mConnection, times(2)).send(eq("rtm/publish"), any(), eq(PublishReply.class));
+    mReplies.get(1).set(reply("1"));
+    assertThat(result.get().getBody().getPosition(), equalTo("1"));
+  }
+
+  @Test
+  public void resendsFailedRequestWhileConnected() throws Exception {
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> result = publish(service, "message");
+    service.onConnected(mConnection);
+
+    mReplies.get(0).setException(new IllegalStateException("Unable to send"));
+    assertThat(mReplies.size(), equalTo(2));
+    mReplies.get(1).set(reply("1"));
+    assertThat(result.get().getBody().getPosition(), equalTo("1"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void failsRequestThatKeepsFailing() throws Exception {
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> failing = publish(service, "failing");
+    ListenableFuture<Pdu<PublishReply>> next = publish(service, "next");
+    service.onConnected(mConnection);
+
+    for (int i = 0; i < 3; i++) {
+      mReplies.get(i).setException(new IllegalStateException("Unable to send"));
+    }
+    try {
+      failing.get();
+      fail("Request must fail");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    // the failed request doesn't hold back the rest of the spool
+    assertThat(mReplies.size(), equalTo(4));
+    mReplies.get(3).set(reply("1"));
+    assertThat(next.get().getBody().getPosition(), equalTo("1"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void spoolsBatchInOrderWithSingleRequests() throws Exception {
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> single = publish(service, "single");
+    List<PublishRequest<String>> batch = Arrays.asList(
+        new PublishRequest<String>("channel", "batch-0"),
+        new PublishRequest<String>("channel", "batch-1"));
+    ListenableFuture<List<ListenableFuture<Pdu<PublishReply>>>> result =
+        service.sendBatch("rtm/publish", batch, Ack.YES, PublishReply.class);
+    assertThat(mLog.size(), equalTo(3));
+
+    service.onConnected(mConnection);
+    for (int i = 0; i < 3; i++) {
+      assertThat(mReplies.size(), equalTo(i + 1));
+      mReplies.get(i).set(reply(String.valueOf(i)));
+    }
+    assertThat(single.get().getBody().getPosition(), equalTo("0"));
+    assertThat(result.get().get(0).get().getBody().getPosition(), equalTo("1"));
+    assertThat(result.get().get(1).get().getBody().getPosition(), equalTo("2"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void replaysRecordsOfPreviousRun() throws Exception {
+    publish(createService(1), "message");
+    mLog.close();
+    mLog = new SegmentLog(mFolder.getRoot(), 4096, 1 << 20);
+
+    RtmService service = createService(1);
+    service.onConnected(mConnection);
+    assertThat(mReplies.size(), equalTo(1));
+    mReplies.get(0).set(reply("1"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  @Test
+  public void dropsCorruptedRecordAndReplaysTheRest() throws Exception {
+    // an acknowledged record whose JSON can't be parsed
+    mLog.append(new byte[]{1, 'x'});
+    RtmService service = createService(1);
+    ListenableFuture<Pdu<PublishReply>> result = publish(service, "message");
+
+    service.onConnected(mConnection);
+    assertThat(mReplies.size(), equalTo(1));
+    mReplies.get(0).set(reply("1"));
+    assertThat(result.get().getBody().getPosition(), equalTo("1"));
+    assertThat(mLog.isEmpty(), is(true));
+  }
+
+  private RtmService createService(int replayWindow) {
+    RtmService service = RtmService.create(0, null);
+    service.setOfflineSpool(new OfflineSpool(mLog, mSerializer, replayWindow));
+    return service;
+  }
+
+  private static ListenableFuture<Pdu<PublishReply>> publish(RtmService service, String message) {
+    return service.send("rtm/publish", new PublishRequest<String>("channel", message), Ack.YES,
+        PublishReply.class);
+  }
+
+  private static Pdu<PublishReply> reply(String position) {
+    PublishReply reply = mock(PublishReply.class);
+    when(reply.getPosition()).thenReturn(position);
+    return new Pdu<PublishReply>("rtm/publish/ok", reply);
+  }
+
+  /*
+   * Serializes a PDU to its index in the list of serialized PDUs.
+   */
+  private static class FakeSerializer implements Serializer {
+    private final List<Pdu<?>> mPdus = new ArrayList<Pdu<?>>();
+
+    @Override
+    public String toJson(Object obj) {
+      mPdus.add((Pdu<?>) obj);
+      return String.valueOf(mPdus.size() - 1);
+    }
+
+    @Override
+    public PduRaw parsePdu(String json) {
+      final Pdu<?> pdu = mPdus.get(Integer.parseInt(json));
+      return new PduRaw(pdu.getAction(), new AnyJson() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T convertToType(Class<T> clazz) {
+          return (T) pdu.getBody();
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class PacedPublisherTest {
+  private final List<SettableFuture<Pdu<PublishReply>>> mSent =
+      new ArrayList<SettableFuture<Pdu<PublishReply>>>();
+  private FakeTicker mTicker;
+  private RtmClient mClient;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    mTicker = new FakeTicker();
+    mClient = mock(RtmClient.class);
+    when(mClient.publish(any(PublishRequest.class), eq(Ack.YES))).thenAnswer(
+        new Answer<ListenableFuture<Pdu<PublishReply>>>() {
+          @Override
+          public ListenableFuture<Pdu<PublishReply>> answer(InvocationOnMock invocation) {
+            SettableFuture<Pdu<PublishReply>> future = SettableFuture.create();
+            mSent.add(future);
+            return future;
+          }
+        });
+  }
+
+  @Test
+  public void keepsOutstandingPublishesWithinWindow() {
+    PacedPublisher publisher = new PacedPublisher(mClient, 2, 2, 100, mTicker);
+    for (int i = 0; i < 5; i++) {
+      publisher.publish(request(i));
+    }
+    assertThat(mSent.size(), equalTo(2));
+    assertThat(publisher.getOutstanding(), equalTo(2));
+    assertThat(publisher.getQueued(), equalTo(3));
+
+    ack(0, 10);
+    assertThat(mSent.size(), equalTo(3));
+    assertThat(publisher.getOutstanding(), equalTo(2));
+    assertThat(publisher.getAckedCount(), equalTo(1L));
+    assertThat(publisher.getAckRttMillis(), closeTo(10, 0.001));
+  }
+
+  @Test
+  public void growsWindowOnTimelyAcks() {
+    PacedPublisher publisher = new PacedPublisher(mClient, 1, 100, 100, mTicker);
+    for (int i = 0; i < 20; i++) {
+      publisher.publish(request(i));
+    }
+    for (int i = 0; i < 10; i++) {
+      ack(i, 10);
+    }
+    assertThat(publisher.getWindow(), greaterThan(1));
+  }
+
+  @Test
+  public void halvesWindowOnLateAck() {
+    PacedPublisher publisher = new PacedPublisher(mClient, 1, 100, 100, mTicker);
+    for (int i = 0; i < 100; i++) {
+      publisher.publish(request(i));
+    }
+    for (int i = 0; i < 20; i++) {
+      ack(i, 10);
+    }
+    int window = publisher.getWindow();
+
+    ack(20, 500);
+    assertThat(publisher.getWindow(), equalTo(Math.max(1, window / 2)));
+
+    // the late acknowledgements of the same burst shrink the window only once
+    int halved = publisher.getWindow();
+    ack(21, 0);
+    ack(22, 0);
+    assertThat(publisher.getWindow(), equalTo(halved));
+  }
+
+  @Test
+  public void shrinksWindowOnFailure() {
+    PacedPublisher publisher = new PacedPublisher(mClient, 1, 100, 100, mTicker);
+    for (int i = 0; i < 50; i++) {
+      publisher.publish(request(i));
+    }
+    for (int i = 0; i < 10; i++) {
+      ack(i, 10);
+    }
+    int window = publisher.getWindow();
+
+    mSent.get(10).setException(new IllegalStateException("failed"));
+    assertThat(publisher.getWindow(), equalTo(Math.max(1, window / 2)));
+    assertThat(publisher.getFailedCount(), equalTo(1L));
+  }
+
+  @Test
+  public void rejectsNewMessageWhenQueueIsFull() throws Exception {
+    PacedPublisher publisher = new PacedPublisher(mClient, 1, 1, 100, mTicker)
+        .setMaxQueued(2, PendingActionEvictionPolicy.REJECT_NEW);
+    publisher.publish(request(0));
+    publisher.publish(request(1));
+    publisher.publish(request(2));
+    ListenableFuture<Pdu<PublishReply>> rejected = publisher.publish(request(3));
+
+    assertThat(failure(rejected), instanceOf(IllegalStateException.class));
+    assertThat(publisher.getQueued(), equalTo(2));
+    assertThat(publisher.getDroppedCount(), equalTo(1L));
+  }
+
+  @Test
+  public void dropsOldestMessageWhenQueueIsFull() throws Exception {
+    PacedPublisher publisher = new PacedPublisher(mClient, 1, 1, 100, mTicker)
+        .setMaxQueued(2, PendingActionEvictionPolicy.DROP_OLDEST);
+    publisher.publish(request(0));
+    ListenableFuture<Pdu<PublishReply>> oldest = publisher.publish(request(1));
+    publisher.publish(request(2));
+    ListenableFuture<Pdu<PublishReply>> newest = publisher.publish(request(3));
+
+    assertThat(failure(oldest), instanceOf(IllegalStateException.class));
+    assertThat(newest.isDone(), is(false));
+    assertThat(publisher.getQueued(), equalTo(2));
+    assertThat(publisher.getDroppedCount(), equalTo(1L));
+  }
+
+  private static Throwable failure(ListenableFuture<?> future) throws Exception {
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      return ex.getCause();
+    }
+    throw new AssertionError("Publish must fail");
+  }
+
+  private void ack(int index, long rttMillis) {
+    mTicker.advance(rttMillis);
+    mSent.get(index).set(new Pdu<PublishReply>("rtm/publish/ok", new PublishReply()));
+  }
+
+  private static PublishRequest<String> request(int i) {
+    return new PublishRequest<String>("channel", String.valueOf(i));
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos = 0;
+
+    void advance(long millis) {
+      mNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.connection.Serializer;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentMatchers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RunWith(JUnit4.class)
+public class PendingQueueTest {
+  private final FakeTicker mTicker = new FakeTicker();
+  private final List<Runnable> mDropped = new ArrayList<Runnable>();
+
+  @Test
+  public void rejectsNewActionWhenBudgetIsExhausted() throws Exception {
+    PendingQueue queue = create(10, 100, PendingActionEvictionPolicy.REJECT_NEW, 0);
+    Runnable first = mock(Runnable.class);
+    queue.add(first, payload(60), SettableFuture.create(), mDropped);
+    try {
+      queue.add(mock(Runnable.class), payload(60), SettableFuture.create(), mDropped);
+      throw new AssertionError("The queue accepted an action over the budget");
+    } catch (IllegalStateException ignored) {
+      // expected
+    }
+
+    assertThat(queue.getBytes(), equalTo(60L));
+    assertThat(queue.poll(mDropped), sameInstance(first));
+    assertThat(queue.getBytes(), equalTo(0L));
+  }
+
+  @Test
+  public void dropsOldestActionsToFitNewOne() throws Exception {
+    PendingQueue queue = create(10, 100, PendingActionEvictionPolicy.DROP_OLDEST, 0);
+    SettableFuture<Object> first = SettableFuture.create();
+    SettableFuture<Object> second = SettableFuture.create();
+    Runnable third = mock(Runnable.class);
+    queue.add(mock(Runnable.class), payload(40), first, mDropped);
+    queue.add(mock(Runnable.class), payload(40), second, mDropped);
+    queue.add(third, payload(50), SettableFuture.create(), mDropped);
+
+    // the queue leaves failing of the dropped futures to the caller
+    assertThat(first.isDone(), is(false));
+    runDropped();
+    assertThat(failure(first), instanceOf(IllegalStateException.class));
+    assertThat(second.isDone(), is(false));
+    assertThat(queue.size(), equalTo(2));
+    assertThat(queue.getBytes(), equalTo(90L));
+  }
+
+  @Test
+  public void lengthLimitFollowsPolicy() throws Exception {
+    PendingQueue queue = create(1, 0, PendingActionEvictionPolicy.DROP_OLDEST, 0);
+    SettableFuture<Object> first = SettableFuture.create();
+    Runnable second = mock(Runnable.class);
+    queue.add(mock(Runnable.class), "first", first, mDropped);
+    queue.add(second, "second", SettableFuture.create(), mDropped);
+
+    runDropped();
+    assertThat(failure(first), instanceOf(IllegalStateException.class));
+    assertThat(queue.poll(mDropped), sameInstance(second));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsActionLargerThanBudget() {
+    PendingQueue queue = create(10, 100, PendingActionEvictionPolicy.DROP_OLDEST, 0);
+    queue.add(mock(Runnable.class), payload(101), SettableFuture.create(), mDropped);
+  }
+
+  @Test
+  public void expiredActionsAreDroppedBeforeDraining() throws Exception {
+    PendingQueue queue = create(10, 0, PendingActionEvictionPolicy.REJECT_NEW, 1000);
+    SettableFuture<Object> stale = SettableFuture.create();
+    Runnable fresh = mock(Runnable.class);
+    queue.add(mock(Runnable.class), "stale", stale, mDropped);
+    mTicker.advance(600);
+    queue.add(fresh, "fresh", SettableFuture.create(), mDropped);
+    mTicker.advance(600);
+
+    assertThat(queue.poll(mDropped), sameInstance(fresh));
+    runDropped();
+    assertThat(failure(stale), instanceOf(TimeoutException.class));
+    assertThat(queue.poll(mDropped), nullValue());
+  }
+
+  @Test
+  public void expiredPublishIsNotSent() throws Exception {
+    RtmService service = RtmService.create(
+        create(10, 0, PendingActionEvictionPolicy.REJECT_NEW, 1000), null);
+    ListenableFuture<Pdu<PublishReply>> result = service.getPubSub().publish(
+        new PublishRequest<String>("channel", "message"), Ack.YES);
+    mTicker.advance(1000);
+
+    Connection connection = mock(Connection.class);
+    service.onConnected(connection);
+    assertThat(failure(result), instanceOf(TimeoutException.class));
+    verify(connection, never()).send(any(String.class), any(),
+        ArgumentMatchers.<Class<Object>>any());
+  }
+
+  @Test
+  public void evictedActionCanBeRetriedFromItsCallback() throws Exception {
+    RtmService service = RtmService.create(
+        create(1, 0, PendingActionEvictionPolicy.DROP_OLDEST, 0), null);
+    final PubSub pubSub = service.getPubSub();
+    final List<ListenableFuture<Pdu<PublishReply>>> retries =
+        new ArrayList<ListenableFuture<Pdu<PublishReply>>>();
+    ListenableFuture<Pdu<PublishReply>> first = pubSub.publish(
+        new PublishRequest<String>("channel", "first"), Ack.YES);
+    first.addListener(new Runnable() {
+      @Override
+      public void run() {
+        // re-enters the offline queue, which must not be in the middle of an eviction
+        retries.add(pubSub.publish(new PublishRequest<String>("channel", "retry"), Ack.YES));
+      }
+    }, MoreExecutors.directExecutor());
+    ListenableFuture<Pdu<PublishReply>> second = pubSub.publish(
+        new PublishRequest<String>("channel", "second"), Ack.YES);
+
+    assertThat(failure(first), instanceOf(IllegalStateException.class));
+    assertThat(retries.size(), equalTo(1));
+    // the retry evicted the second publish in turn
+    assertThat(failure(second), instanceOf(IllegalStateException.class));
+    assertThat(retries.get(0).isDone(), is(false));
+  }
+
+  private void runDropped() {
+    for (Runnable failure : mDropped) {
+      failure.run();
+    }
+    mDropped.clear();
+  }
+
+  private PendingQueue create(int maxActions, long maxBytes, PendingActionEvictionPolicy policy,
+                              long timeoutMillis) {
+    Serializer serializer = new Serializer() {
+      @Override
+      public String toJson(Object obj) {
+        return (String) obj;
+      }
+
+      @Override
+      public PduRaw parsePdu(String json) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    return new PendingQueue(maxActions, maxBytes, policy, timeoutMillis, serializer, mTicker);
+  }
+
+  private static String payload(int size) {
+    return Strings.repeat("x", size);
+  }
+
+  private static Throwable failure(ListenableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      return ex.getCause();
+    }
+    throw new AssertionError("Future must fail");
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos = 0;
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+
+    void advance(long millis) {
+      mNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.satori.rtm.PubSub.UnsolicitedAction;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class PubSubRoutingTest {
+  private RtmService mService;
+
+  @Before
+  public void setUp() {
+    mService = RtmService.create(0, new TrampolineExecutorService());
+  }
+
+  @Test
+  public void classifiesUnsolicitedActions() {
+    assertThat(UnsolicitedAction.of("rtm/subscription/data"),
+        is(UnsolicitedAction.SUBSCRIPTION_DATA));
+    assertThat(UnsolicitedAction.of("rtm/subscription/error"),
+        is(UnsolicitedAction.SUBSCRIPTION_ERROR));
+    assertThat(UnsolicitedAction.of("rtm/subscription/info"),
+        is(UnsolicitedAction.SUBSCRIPTION_INFO));
+    assertThat(UnsolicitedAction.of("rtm/publish/ok"), nullValue());
+    assertThat(UnsolicitedAction.of(null), nullValue());
+  }
+
+  @Test
+  public void routesDataToSubscription() {
+    SubscriptionListener listener = mock(SubscriptionListener.class);
+    mService.getPubSub().createSubscription("channel",
+        new SubscriptionConfig(SubscriptionMode.SIMPLE, listener));
+
+    SubscriptionData data = data("channel");
+    mService.getPubSub().onUnsolicitedPDU(pdu("rtm/subscription/data", data));
+
+    verify(listener).onSubscriptionData(data);
+  }
+
+  @Test
+  public void ignoresDataOfUnknownSubscription() {
+    mService.getPubSub().onUnsolicitedPDU(pdu("rtm/subscription/data", data("unknown")));
+    mService.getPubSub().onUnsolicitedPDU(pdu("rtm/subscription/data", data(null)));
+  }
+
+  private static SubscriptionData data(String subscriptionId) {
+    return new SubscriptionData(subscriptionId, "1", Collections.<AnyJson>emptyList(), null);
+  }
+
+  private static PduRaw pdu(String action, final Object body) {
+    return new PduRaw(action, new AnyJson() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <F> F convertToType(Class<F> clazz) {
+        return (F) body;
+      }
+    });
+  }
+}
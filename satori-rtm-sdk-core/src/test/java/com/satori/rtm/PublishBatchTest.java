@@ -0,0 +1,124 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PublishReply;
+import com.satori.rtm.model.PublishRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+@RunWith(JUnit4.class)
+public class PublishBatchTest {
+  private Connection mConnection;
+  private PublishRequest<String> mFirst;
+  private PublishRequest<String> mSecond;
+  private PublishRequest<String> mThird;
+
+  @Before
+  public void setUp() {
+    mConnection = mock(Connection.class);
+    mFirst = new PublishRequest<String>("channel", "first");
+    mSecond = new PublishRequest<String>("channel", "second");
+    mThird = new PublishRequest<String>("channel", "third");
+    reply(mFirst, "1");
+    reply(mSecond, "2");
+    reply(mThird, "3");
+  }
+
+  @Test
+  public void publishesBatchInOrder() throws Exception {
+    RtmService service = RtmService.create(0, null);
+    service.onConnected(mConnection);
+
+    ListenableFuture<PublishBatchResult> result = service.getPubSub().publishBatch(
+        Arrays.asList(mFirst, mSecond, mThird), Ack.YES);
+
+    assertThat(positions(result.get()), contains("1", "2", "3"));
+    InOrder order = inOrder(mConnection);
+    order.verify(mConnection).send("rtm/publish", mFirst, PublishReply.class);
+    order.verify(mConnection).send("rtm/publish", mSecond, PublishReply.class);
+    order.verify(mConnection).send("rtm/publish", mThird, PublishReply.class);
+  }
+
+  @Test
+  public void batchTakesSinglePendingSlotWhileOffline() throws Exception {
+    RtmService service = RtmService.create(1, null);
+
+    ListenableFuture<PublishBatchResult> result = service.getPubSub().publishBatch(
+        Arrays.asList(mFirst, mSecond, mThird), Ack.YES);
+    assertThat(result.isDone(), is(false));
+
+    service.onConnected(mConnection);
+    assertThat(positions(result.get()), contains("1", "2", "3"));
+  }
+
+  @Test
+  public void failedMessageDoesNotHideOtherReplies() throws Exception {
+    RtmService service = RtmService.create(0, null);
+    service.onConnected(mConnection);
+    when(mConnection.send(eq("rtm/publish"), eq(mSecond), eq(PublishReply.class)))
+        .thenReturn(Futures.<Pdu<PublishReply>>immediateFailedFuture(
+            new IllegalStateException("failed")));
+
+    PublishBatchResult result = service.getPubSub().publishBatch(
+        Arrays.asList(mFirst, mSecond, mThird), Ack.YES).get();
+
+    assertThat(result.hasErrors(), is(true));
+    assertThat(result.getErrors().keySet(), contains(1));
+    assertThat(result.getErrors().get(1), instanceOf(IllegalStateException.class));
+    assertThat(result.getReplies().get(0).getPosition(), equalTo("1"));
+    assertThat(result.getReplies().get(1), nullValue());
+    assertThat(result.getReplies().get(2).getPosition(), equalTo("3"));
+  }
+
+  @Test
+  public void batchFailsIfNotConnected() throws Exception {
+    RtmService service = RtmService.create(0, null);
+
+    ListenableFuture<PublishBatchResult> result = service.getPubSub().publishBatch(
+        Arrays.asList(mFirst, mSecond, mThird), Ack.YES);
+
+    try {
+      result.get();
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+      return;
+    }
+    throw new AssertionError("Batch must fail");
+  }
+
+  private void reply(PublishRequest<String> request, String position) {
+    PublishReply reply = mock(PublishReply.class);
+    when(reply.getPosition()).thenReturn(position);
+    when(mConnection.send(eq("rtm/publish"), eq(request), eq(PublishReply.class)))
+        .thenReturn(Futures.immediateFuture(new Pdu<PublishReply>("rtm/publish/ok", reply)));
+  }
+
+  private static List<String> positions(PublishBatchResult result) {
+    List<String> positions = new ArrayList<String>();
+    for (PublishReply reply : result.getReplies()) {
+      positions.add(reply.getPosition());
+    }
+    return positions;
+  }
+}
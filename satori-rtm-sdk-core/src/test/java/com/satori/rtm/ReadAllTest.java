@@ -0,0 +1,114 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PduException;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.ReadReply;
+import com.satori.rtm.model.ReadRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ReadAllTest {
+  private final List<SettableFuture<Pdu<ReadReply>>> mReplies =
+      new ArrayList<SettableFuture<Pdu<ReadReply>>>();
+  private final List<String> mKeys = new ArrayList<String>();
+  private RtmService mService;
+
+  @Before
+  public void setUp() {
+    Connection connection = mock(Connection.class);
+    when(connection.send(eq("rtm/read"), any(), eq(ReadReply.class))).thenAnswer(
+        new Answer<ListenableFuture<Pdu<ReadReply>>>() {
+          @Override
+          public ListenableFuture<Pdu<ReadReply>> answer(InvocationOnMock invocation) {
+            mKeys.add(((ReadRequest) invocation.getArgument(1)).getChannel());
+            SettableFuture<Pdu<ReadReply>> reply = SettableFuture.create();
+            mReplies.add(reply);
+            return reply;
+          }
+        });
+    mService = RtmService.create(0, null);
+    mService.onConnected(connection);
+  }
+
+  @Test
+  public void pipelinesReadsWithinWindow() throws Exception {
+    ListenableFuture<ReadAllResult> result = mService.readAll(requests("a", "b", "c", "d"), 2);
+    assertThat(mKeys, contains("a", "b"));
+
+    mReplies.get(1).set(reply("100:2"));
+    assertThat(mKeys, contains("a", "b", "c"));
+    mReplies.get(0).set(reply("100:1"));
+    mReplies.get(2).set(reply("100:3"));
+    assertThat(result.isDone(), is(false));
+
+    mReplies.get(3).set(reply("100:4"));
+    ReadAllResult readAll = result.get();
+    assertThat(readAll.getReplies().keySet(), contains("a", "b", "c", "d"));
+    assertThat(readAll.getReplies().get("c").getPosition(), equalTo("100:3"));
+    assertThat(readAll.hasErrors(), is(false));
+  }
+
+  @Test
+  public void reportsFailuresPerKey() throws Exception {
+    ListenableFuture<ReadAllResult> result = mService.readAll(requests("a", "b"), 10);
+    mReplies.get(0).setException(
+        new PduException("Read failed", new PduRaw("rtm/read/error", null)));
+    mReplies.get(1).set(reply("100:1"));
+
+    ReadAllResult readAll = result.get();
+    assertThat(readAll.getReplies().keySet(), contains("b"));
+    assertThat(readAll.getErrors().keySet(), contains("a"));
+    assertThat(readAll.getErrors().get("a"), instanceOf(PduException.class));
+  }
+
+  @Test
+  public void emptyRequestCompletesImmediately() throws Exception {
+    ReadAllResult readAll =
+        mService.readAll(Collections.<ReadRequest>emptyList(), 10).get();
+
+    assertThat(readAll.getReplies().isEmpty(), is(true));
+    assertThat(readAll.hasErrors(), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDuplicateKeys() {
+    mService.readAll(requests("a", "a"), 10);
+  }
+
+  private static List<ReadRequest> requests(String... keys) {
+    List<ReadRequest> requests = new ArrayList<ReadRequest>();
+    for (String key : Arrays.asList(keys)) {
+      requests.add(new ReadRequest(key, null));
+    }
+    return requests;
+  }
+
+  private static Pdu<ReadReply> reply(String position) {
+    ReadReply reply = new ReadReply();
+    reply.setPosition(position);
+    return new Pdu<ReadReply>("rtm/read/ok", reply);
+  }
+}
@@ -0,0 +1,102 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.ReadReply;
+import com.satori.rtm.model.ReadRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ReadCoalescingTest {
+  private final List<SettableFuture<Pdu<ReadReply>>> mRequests =
+      new ArrayList<SettableFuture<Pdu<ReadReply>>>();
+  private Connection mConnection;
+  private RtmService mService;
+
+  @Before
+  public void setUp() {
+    mConnection = mock(Connection.class);
+    when(mConnection.send(eq("rtm/read"), any(), eq(ReadReply.class))).thenAnswer(
+        new Answer<ListenableFuture<Pdu<ReadReply>>>() {
+          @Override
+          public ListenableFuture<Pdu<ReadReply>> answer(InvocationOnMock invocation) {
+            SettableFuture<Pdu<ReadReply>> request = SettableFuture.create();
+            mRequests.add(request);
+            return request;
+          }
+        });
+    mService = RtmService.create(0, null);
+    mService.onConnected(mConnection);
+  }
+
+  @Test
+  public void concurrentReadsShareRequest() throws Exception {
+    mService.setReadCoalescing(true);
+    ListenableFuture<Pdu<ReadReply>> first = mService.read(new ReadRequest("key", null));
+    ListenableFuture<Pdu<ReadReply>> second = mService.read(new ReadRequest("key", null));
+    assertThat(mRequests.size(), equalTo(1));
+
+    mRequests.get(0).set(reply("100:1"));
+    assertThat(first.get().getBody().getPosition(), equalTo("100:1"));
+    assertThat(second.get().getBody().getPosition(), equalTo("100:1"));
+
+    // the reply has arrived, the next read sends a new request
+    mService.read(new ReadRequest("key", null));
+    assertThat(mRequests.size(), equalTo(2));
+  }
+
+  @Test
+  public void readsOfDifferentPositionsAreNotMerged() {
+    mService.setReadCoalescing(true);
+    mService.read(new ReadRequest("key", null));
+    mService.read(new ReadRequest("key", "100:1"));
+    mService.read(new ReadRequest("other", null));
+
+    assertThat(mRequests.size(), equalTo(3));
+  }
+
+  @Test
+  public void cancellingOneReadDoesNotAffectOthers() throws Exception {
+    mService.setReadCoalescing(true);
+    ListenableFuture<Pdu<ReadReply>> first = mService.read(new ReadRequest("key", null));
+    ListenableFuture<Pdu<ReadReply>> second = mService.read(new ReadRequest("key", null));
+    first.cancel(false);
+
+    mRequests.get(0).set(reply("100:1"));
+    assertThat(first.isCancelled(), is(true));
+    assertThat(second.get().getBody().getPosition(), equalTo("100:1"));
+  }
+
+  @Test
+  public void readsAreNotMergedByDefault() {
+    mService.read(new ReadRequest("key", null));
+    mService.read(new ReadRequest("key", null));
+
+    verify(mConnection, times(2)).send(eq("rtm/read"), any(), eq(ReadReply.class));
+  }
+
+  private static Pdu<ReadReply> reply(String position) {
+    ReadReply reply = new ReadReply();
+    reply.setPosition(position);
+    return new Pdu<ReadReply>("rtm/read/ok", reply);
+  }
+}
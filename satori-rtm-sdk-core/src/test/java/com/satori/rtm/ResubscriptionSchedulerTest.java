@@ -0,0 +1,175 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ResubscriptionSchedulerTest {
+  private final List<String> mSubscribed = new ArrayList<String>();
+  private final List<SettableFuture<Pdu<SubscribeReply>>> mReplies =
+      new ArrayList<SettableFuture<Pdu<SubscribeReply>>>();
+  private final List<Runnable> mTimers = new ArrayList<Runnable>();
+  private TrampolineExecutorService mDispatcher;
+  private ScheduledExecutorService mScheduler;
+  private Connection mConnection;
+  private FakeTicker mTicker;
+  private RtmService mService;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    mDispatcher = new TrampolineExecutorService();
+    mScheduler = mock(ScheduledExecutorService.class);
+    mConnection = mock(Connection.class);
+    mTicker = new FakeTicker();
+    mService = RtmService.create(0, mDispatcher);
+
+    when(mConnection.send(eq("rtm/subscribe"), any(SubscribeRequest.class),
+        eq(SubscribeReply.class))).thenAnswer(
+        new Answer<ListenableFuture<Pdu<SubscribeReply>>>() {
+          @Override
+          public ListenableFuture<Pdu<SubscribeReply>> answer(InvocationOnMock invocation) {
+            SubscribeRequest request = invocation.getArgument(1);
+            mSubscribed.add(request.getChannel());
+            SettableFuture<Pdu<SubscribeReply>> reply = SettableFuture.create();
+            mReplies.add(reply);
+            return reply;
+          }
+        });
+    when(mScheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS)))
+        .thenAnswer(new Answer<ScheduledFuture<?>>() {
+          @Override
+          public ScheduledFuture<?> answer(InvocationOnMock invocation) {
+            mTimers.add(invocation.<Runnable>getArgument(0));
+            return mock(ScheduledFuture.class);
+          }
+        });
+  }
+
+  @Test
+  public void resubscribesTrackedSubscriptionsFirstInBatches() {
+    pace(2, 10);
+    subscribe("a", SubscriptionMode.SIMPLE);
+    subscribe("b", SubscriptionMode.SIMPLE);
+    subscribe("c", SubscriptionMode.SIMPLE);
+    subscribe("tracked", SubscriptionMode.RELIABLE);
+
+    mService.onConnected(mConnection);
+    assertThat(mSubscribed.size(), equalTo(2));
+    assertThat(mSubscribed.get(0), equalTo("tracked"));
+    assertThat(mTimers.size(), equalTo(1));
+
+    mTimers.get(0).run();
+    assertThat(mSubscribed.size(), equalTo(4));
+    assertThat(mTimers.size(), equalTo(1));
+  }
+
+  @Test
+  public void limitsRequestsWaitingForReply() {
+    pace(10, 2);
+    subscribe("a", SubscriptionMode.SIMPLE);
+    subscribe("b", SubscriptionMode.SIMPLE);
+    subscribe("c", SubscriptionMode.SIMPLE);
+
+    mService.onConnected(mConnection);
+    assertThat(mSubscribed.size(), equalTo(2));
+
+    reply(0);
+    assertThat(mSubscribed.size(), equalTo(3));
+  }
+
+  @Test
+  public void measuresTimeToResubscribe() {
+    pace(10, 10);
+    subscribe("a", SubscriptionMode.SIMPLE);
+    subscribe("b", SubscriptionMode.SIMPLE);
+    assertThat(mService.getPubSub().getLastResubscriptionMillis(), equalTo(-1L));
+
+    mService.onConnected(mConnection);
+    mTicker.advance(30);
+    reply(0);
+    assertThat(mService.getPubSub().getLastResubscriptionMillis(), equalTo(-1L));
+    mTicker.advance(20);
+    reply(1);
+    assertThat(mService.getPubSub().getLastResubscriptionMillis(), equalTo(50L));
+  }
+
+  @Test
+  public void stopsResubscribingOnDisconnect() {
+    pace(1, 10);
+    subscribe("a", SubscriptionMode.SIMPLE);
+    subscribe("b", SubscriptionMode.SIMPLE);
+
+    mService.onConnected(mConnection);
+    mService.onDisconnected();
+    mTimers.get(0).run();
+    assertThat(mSubscribed.size(), equalTo(1));
+  }
+
+  @Test
+  public void resubscribesAllAtOnceByDefault() {
+    subscribe("a", SubscriptionMode.SIMPLE);
+    subscribe("b", SubscriptionMode.SIMPLE);
+    subscribe("tracked", SubscriptionMode.RELIABLE);
+
+    mService.onConnected(mConnection);
+    assertThat(mSubscribed.size(), equalTo(3));
+    assertThat(mSubscribed.get(0), equalTo("tracked"));
+    assertThat(mSubscribed.subList(1, 3), containsInAnyOrder("a", "b"));
+  }
+
+  private void pace(int batchSize, int maxInFlight) {
+    mService.getPubSub().setResubscriptionScheduler(new ResubscriptionScheduler(
+        mDispatcher, mScheduler, batchSize, 100, maxInFlight, mTicker));
+  }
+
+  private void subscribe(String channel, EnumSet<SubscriptionMode> modes) {
+    mService.getPubSub().createSubscription(channel,
+        new SubscriptionConfig(modes, new SubscriptionAdapter()));
+  }
+
+  private void reply(int index) {
+    mReplies.get(index).set(new Pdu<SubscribeReply>("rtm/subscribe/ok",
+        new SubscribeReply("channel", "1")));
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos = 0;
+
+    void advance(long millis) {
+      mNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SafeRtmClientListenerTest {
+  private final List<String> mEvents = new ArrayList<String>();
+  private final ListAppender<ILoggingEvent> mAppender = new ListAppender<ILoggingEvent>();
+  private Logger mLogger;
+
+  @Before
+  public void setUp() {
+    mLogger = (Logger) LoggerFactory.getLogger(ThrowingListener.class);
+    mAppender.start();
+    mLogger.addAppender(mAppender);
+  }
+
+  @After
+  public void tearDown() {
+    mLogger.detachAppender(mAppender);
+  }
+
+  @Test
+  public void failedListenerIsLoggedAndKeepsReceivingEvents() {
+    RtmClient client = mock(RtmClient.class);
+    RtmClientListener listener = SafeRtmClientListener.wrap(new ThrowingListener());
+
+    listener.onEnterConnecting(client);
+    listener.onLeaveConnecting(client);
+    listener.onEnterConnected(client);
+
+    assertThat(mEvents, contains("enter-connecting", "leave-connecting", "enter-connected"));
+    assertThat(mAppender.list.size(), equalTo(2));
+    for (ILoggingEvent event : mAppender.list) {
+      assertThat(event.getLevel(), equalTo(Level.ERROR));
+    }
+  }
+
+  @Test
+  public void wrapsListenerOnce() {
+    RtmClientListener listener = SafeRtmClientListener.wrap(new ThrowingListener());
+    assertThat(SafeRtmClientListener.wrap(listener), sameInstance(listener));
+  }
+
+  private class ThrowingListener extends RtmClientAdapter {
+    @Override
+    public void onEnterConnecting(RtmClient client) {
+      mEvents.add("enter-connecting");
+      throw new IllegalStateException("failed listener");
+    }
+
+    @Override
+    public void onLeaveConnecting(RtmClient client) {
+      mEvents.add("leave-connecting");
+      // errors are suppressed too, like by the reflective proxy the wrapper replaced
+      throw new AssertionError("failed listener");
+    }
+
+    @Override
+    public void onEnterConnected(RtmClient client) {
+      mEvents.add("enter-connected");
+    }
+  }
+}
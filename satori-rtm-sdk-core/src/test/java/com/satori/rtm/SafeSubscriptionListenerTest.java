@@ -0,0 +1,86 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SafeSubscriptionListenerTest {
+  private final List<String> mReceived = new ArrayList<String>();
+  private final ListAppender<ILoggingEvent> mAppender = new ListAppender<ILoggingEvent>();
+  private Logger mLogger;
+  private RtmService mService;
+
+  @Before
+  public void setUp() {
+    mService = RtmService.create(0, new TrampolineExecutorService());
+    mLogger = (Logger) LoggerFactory.getLogger(ThrowingListener.class);
+    mAppender.start();
+    mLogger.addAppender(mAppender);
+  }
+
+  @After
+  public void tearDown() {
+    mLogger.detachAppender(mAppender);
+  }
+
+  @Test
+  public void failedListenerIsLoggedAndKeepsReceivingData() {
+    mService.getPubSub().createSubscription("channel",
+        new SubscriptionConfig(SubscriptionMode.SIMPLE, new ThrowingListener()));
+
+    deliver("100:1");
+    deliver("100:2");
+    deliver("100:3");
+
+    assertThat(mReceived, contains("100:1", "100:2", "100:3"));
+    assertThat(mAppender.list.size(), equalTo(2));
+    for (ILoggingEvent event : mAppender.list) {
+      assertThat(event.getLevel(), equalTo(Level.ERROR));
+    }
+  }
+
+  private void deliver(String position) {
+    final SubscriptionData data = new SubscriptionData("channel", position,
+        Collections.<AnyJson>emptyList(), null);
+    mService.getPubSub().onUnsolicitedPDU(new PduRaw("rtm/subscription/data", new AnyJson() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <F> F convertToType(Class<F> clazz) {
+        return (F) data;
+      }
+    }));
+  }
+
+  private class ThrowingListener extends SubscriptionAdapter {
+    @Override
+    public void onSubscriptionData(SubscriptionData data) {
+      mReceived.add(data.getPosition());
+      if ("100:1".equals(data.getPosition())) {
+        throw new IllegalStateException("failed listener");
+      }
+      if ("100:2".equals(data.getPosition())) {
+        // errors are suppressed too, like by the reflective proxy the wrapper replaced
+        throw new AssertionError("failed listener");
+      }
+    }
+  }
+}
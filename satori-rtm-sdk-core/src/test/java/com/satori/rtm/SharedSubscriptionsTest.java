@@ -0,0 +1,120 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import java.util.Collections;
+import java.util.EnumSet;
+
+@RunWith(JUnit4.class)
+public class SharedSubscriptionsTest {
+  private RtmClient mClient;
+  private SharedSubscriptions mShared;
+
+  @Before
+  public void setUp() {
+    mClient = mock(RtmClient.class);
+    mShared = new SharedSubscriptions(mClient);
+  }
+
+  @Test
+  public void fansOutDataOfSingleSubscription() {
+    SubscriptionListener first = mock(SubscriptionListener.class);
+    SubscriptionListener second = mock(SubscriptionListener.class);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, first);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, second);
+
+    SubscriptionListener upstream = upstream();
+    SubscriptionData data = new SubscriptionData("channel", "1",
+        Collections.<AnyJson>emptyList(), null);
+    upstream.onSubscriptionData(data);
+
+    verify(first).onSubscriptionData(data);
+    verify(second).onSubscriptionData(data);
+    assertThat(mShared.getListenerCount("channel"), equalTo(2));
+  }
+
+  @Test
+  public void lateListenerCatchesUpWithLifecycle() {
+    SubscriptionListener first = mock(SubscriptionListener.class);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, first);
+    SubscriptionListener upstream = upstream();
+    SubscribeRequest request = new SubscribeRequest("channel", null);
+    SubscribeReply reply = new SubscribeReply("channel", "1");
+    upstream.onCreated();
+    upstream.onEnterSubscribed(request, reply);
+
+    SubscriptionListener late = mock(SubscriptionListener.class);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, late);
+
+    verify(late).onCreated();
+    verify(late).onEnterSubscribed(request, reply);
+  }
+
+  @Test
+  public void removesSubscriptionWithLastListener() {
+    SubscriptionListener first = mock(SubscriptionListener.class);
+    SubscriptionListener second = mock(SubscriptionListener.class);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, first);
+    mShared.attach("channel", SubscriptionMode.SIMPLE, second);
+
+    mShared.detach("channel", first);
+    verify(first).onDeleted();
+    verify(mClient, never()).removeSubscription(anyString());
+
+    mShared.detach("channel", second);
+    verify(mClient).removeSubscription("channel");
+    assertThat(mShared.getListenerCount("channel"), equalTo(0));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void rollsBackChannelIfSubscriptionCantBeCreated() {
+    doThrow(new IllegalStateException("Subscription already exists")).doNothing()
+        .when(mClient).createSubscription(eq("channel"), any(EnumSet.class),
+            any(SubscriptionListener.class));
+    try {
+      mShared.attach("channel", SubscriptionMode.SIMPLE, mock(SubscriptionListener.class));
+      throw new AssertionError("Attach must fail");
+    } catch (IllegalStateException expected) {
+      assertThat(mShared.getListenerCount("channel"), equalTo(0));
+    }
+
+    mShared.attach("channel", SubscriptionMode.SIMPLE, mock(SubscriptionListener.class));
+    verify(mClient, times(2)).createSubscription(eq("channel"), any(EnumSet.class),
+        any(SubscriptionListener.class));
+    assertThat(mShared.getListenerCount("channel"), equalTo(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsOtherModesForSharedChannel() {
+    mShared.attach("channel", SubscriptionMode.SIMPLE, mock(SubscriptionListener.class));
+    mShared.attach("channel", SubscriptionMode.RELIABLE, mock(SubscriptionListener.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  private SubscriptionListener upstream() {
+    ArgumentCaptor<SubscriptionListener> captor =
+        ArgumentCaptor.forClass(SubscriptionListener.class);
+    verify(mClient, times(1)).createSubscription(eq("channel"), any(EnumSet.class),
+        captor.capture());
+    return captor.getValue();
+  }
+}
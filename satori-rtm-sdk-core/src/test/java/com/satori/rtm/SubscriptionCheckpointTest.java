@@ -0,0 +1,125 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.storage.CheckpointStore;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class SubscriptionCheckpointTest {
+  private TrampolineExecutorService mDispatcher;
+  private RtmService mService;
+  private CheckpointStore mStore;
+
+  @Before
+  public void setUp() {
+    mDispatcher = new TrampolineExecutorService();
+    mService = RtmService.create(0, mDispatcher);
+    mStore = mock(CheckpointStore.class);
+    mService.getPubSub().setCheckpointStore(mStore);
+  }
+
+  @Test
+  public void resumesFromStoredPosition() {
+    when(mStore.load("channel")).thenReturn("100:5");
+    SubscriptionConfig config =
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter());
+    mService.getPubSub().createSubscription("channel", config);
+
+    assertThat(config.getPosition(), equalTo("100:5"));
+  }
+
+  @Test
+  public void explicitPositionWins() {
+    when(mStore.load("channel")).thenReturn("100:5");
+    SubscriptionConfig config =
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter())
+            .setPosition("100:1");
+    mService.getPubSub().createSubscription("channel", config);
+
+    assertThat(config.getPosition(), equalTo("100:1"));
+  }
+
+  @Test
+  public void savesTrackedPositions() {
+    mService.getPubSub().createSubscription("channel",
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter()));
+    mService.getPubSub().createSubscription("simple",
+        new SubscriptionConfig(SubscriptionMode.SIMPLE, new SubscriptionAdapter()));
+
+    deliver(new SubscriptionData("channel", "100:7", Collections.<AnyJson>emptyList(), null));
+    deliver(new SubscriptionData("simple", "100:8", Collections.<AnyJson>emptyList(), null));
+
+    verify(mStore).save("channel", "100:7");
+    verify(mStore, never()).save("simple", "100:8");
+  }
+
+  @Test
+  public void removesPositionWithSubscription() {
+    mService.getPubSub().createSubscription("channel",
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter()));
+    deliver(new SubscriptionData("channel", "100:7", Collections.<AnyJson>emptyList(), null));
+
+    mService.getPubSub().removeSubscription("channel");
+    deliver(new SubscriptionData("channel", "100:8", Collections.<AnyJson>emptyList(), null));
+
+    verify(mStore).remove("channel");
+    verify(mStore, never()).save("channel", "100:8");
+  }
+
+  @Test
+  public void recreatedSubscriptionDoesNotResumeRemovedPosition() {
+    final PubSub pubSub = mService.getPubSub();
+    pubSub.createSubscription("channel",
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter()));
+    when(mStore.load("channel")).thenReturn("100:7");
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        when(mStore.load("channel")).thenReturn(null);
+        return null;
+      }
+    }).when(mStore).remove("channel");
+
+    final SubscriptionConfig recreated =
+        new SubscriptionConfig(SubscriptionMode.RELIABLE, new SubscriptionAdapter());
+    // both calls are made from a dispatcher task, so the removal is still pending on recreate
+    mDispatcher.submit(new Runnable() {
+      @Override
+      public void run() {
+        pubSub.removeSubscription("channel");
+        pubSub.createSubscription("channel", recreated);
+      }
+    });
+
+    verify(mStore).remove("channel");
+    assertThat(recreated.getPosition(), nullValue());
+  }
+
+  private void deliver(final SubscriptionData data) {
+    mService.getPubSub().onUnsolicitedPDU(new PduRaw("rtm/subscription/data", new AnyJson() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <F> F convertToType(Class<F> clazz) {
+        return (F) data;
+      }
+    }));
+  }
+}
@@ -0,0 +1,104 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class SubscriptionDeduplicationTest {
+  private RtmService mService;
+  private SubscriptionListener mListener;
+
+  @Before
+  public void setUp() {
+    mService = RtmService.create(0, new TrampolineExecutorService());
+    mListener = mock(SubscriptionListener.class);
+  }
+
+  @Test
+  public void comparesPositions() {
+    assertThat(StreamPosition.parse("10:5").compareTo(StreamPosition.parse("10:12")),
+        lessThan(0));
+    assertThat(StreamPosition.parse("11:0").compareTo(StreamPosition.parse("10:12")),
+        greaterThan(0));
+    assertThat(StreamPosition.parse("10:5"), equalTo(StreamPosition.parse("10:5")));
+    assertThat(StreamPosition.parse("10"), nullValue());
+    assertThat(StreamPosition.parse("a:1"), nullValue());
+    assertThat(StreamPosition.parse(null), nullValue());
+  }
+
+  @Test
+  public void dropsRepeatedData() {
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.RELIABLE, mListener)
+        .setDeduplication(true);
+    mService.getPubSub().createSubscription("channel", config);
+
+    deliver(data("channel", null, "100:2"));
+    deliver(data("channel", null, "100:1"));
+    deliver(data("channel", null, "100:2"));
+    deliver(data("channel", null, "100:3"));
+
+    verify(mListener, times(2)).onSubscriptionData(any(SubscriptionData.class));
+    assertThat(config.getSuppressedCount(), equalTo(4L));
+    assertThat(config.getPosition(), equalTo("100:3"));
+  }
+
+  @Test
+  public void tracksPositionsPerChannel() {
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.SIMPLE, mListener)
+        .setPrefix(true)
+        .setDeduplication(true);
+    mService.getPubSub().createSubscription("prefix", config);
+
+    deliver(data("prefix", "prefix.a", "100:5"));
+    deliver(data("prefix", "prefix.b", "100:1"));
+    deliver(data("prefix", "prefix.a", "100:5"));
+
+    verify(mListener, times(2)).onSubscriptionData(any(SubscriptionData.class));
+    assertThat(config.getSuppressedCount(), equalTo(2L));
+  }
+
+  @Test
+  public void deliversEverythingByDefault() {
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.RELIABLE, mListener);
+    mService.getPubSub().createSubscription("channel", config);
+
+    deliver(data("channel", null, "100:2"));
+    deliver(data("channel", null, "100:2"));
+
+    verify(mListener, times(2)).onSubscriptionData(any(SubscriptionData.class));
+    assertThat(config.getSuppressedCount(), equalTo(0L));
+  }
+
+  private void deliver(final SubscriptionData data) {
+    mService.getPubSub().onUnsolicitedPDU(new PduRaw("rtm/subscription/data", new AnyJson() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <F> F convertToType(Class<F> clazz) {
+        return (F) data;
+      }
+    }));
+  }
+
+  private static SubscriptionData data(String subscriptionId, String channel, String position) {
+    AnyJson message = mock(AnyJson.class);
+    return new SubscriptionData(subscriptionId, position, Arrays.asList(message, message),
+        channel);
+  }
+}
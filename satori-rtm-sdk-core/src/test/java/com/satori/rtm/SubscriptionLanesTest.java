@@ -0,0 +1,223 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.utils.VirtualThreads;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class SubscriptionLanesTest {
+  private SubscriptionLanes mLanes;
+  private RtmService mService;
+
+  @Before
+  public void setUp() {
+    mLanes = new SubscriptionLanes(2);
+    mService = RtmService.create(0, null);
+    mService.getPubSub().setDispatchLanes(mLanes);
+  }
+
+  @After
+  public void tearDown() {
+    mLanes.shutdown();
+  }
+
+  @Test
+  public void fallsBackToPlatformThreadsWithoutVirtualThreads() throws InterruptedException {
+    if (!VirtualThreads.isSupported()) {
+      assertThat(VirtualThreads.newThreadFactory("prefix-"), nullValue());
+    }
+    SubscriptionLanes lanes = SubscriptionLanes.create(2, true);
+    try {
+      final CountDownLatch done = new CountDownLatch(1);
+      final List<Thread> threads = new ArrayList<Thread>();
+      lanes.laneFor("channel").execute(new Runnable() {
+        @Override
+        public void run() {
+          threads.add(Thread.currentThread());
+          done.countDown();
+        }
+      });
+      assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+      // both virtual and fallback lane threads are named after the lanes and don't block exit
+      assertThat(threads.get(0).getName(), startsWith("rtm-subscription-lane-"));
+      assertThat(threads.get(0).isDaemon(), is(true));
+    } finally {
+      lanes.shutdown();
+    }
+  }
+
+  @Test
+  public void slowSubscriptionDoesNotBlockOtherLanes() throws InterruptedException {
+    String slowId = "slow";
+    String fastId = findIdOnOtherLane(slowId);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch fastDelivered = new CountDownLatch(1);
+    final List<String> slowPositions = Collections.synchronizedList(new ArrayList<String>());
+
+    SubscriptionListener slow = mService.getPubSub().dispatchListener(slowId,
+        new SubscriptionConfig(SubscriptionMode.SIMPLE, new SubscriptionAdapter() {
+          @Override
+          public void onSubscriptionData(SubscriptionData data) {
+            try {
+              release.await();
+            } catch (InterruptedException ignore) {
+              Thread.currentThread().interrupt();
+            }
+            slowPositions.add(data.getPosition());
+          }
+        }));
+    SubscriptionListener fast = mService.getPubSub().dispatchListener(fastId,
+        new SubscriptionConfig(SubscriptionMode.SIMPLE, new SubscriptionAdapter() {
+          @Override
+          public void onSubscriptionData(SubscriptionData data) {
+            fastDelivered.countDown();
+          }
+        }));
+
+    slow.onSubscriptionData(data(slowId, "1"));
+    slow.onSubscriptionData(data(slowId, "2"));
+    slow.onSubscriptionData(data(slowId, "3"));
+    fast.onSubscriptionData(data(fastId, "1"));
+
+    assertThat(fastDelivered.await(10, TimeUnit.SECONDS), is(true));
+    int slowLane = laneIndex(slowId);
+    assertThat(mService.getPubSub().getDispatchLaneQueueDepths().get(slowLane), equalTo(2));
+
+    release.countDown();
+    mLanes.shutdown();
+    assertThat(mLanes.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    assertThat(slowPositions, contains("1", "2", "3"));
+  }
+
+  @Test
+  public void partitionsPrefixDataByChannel() throws InterruptedException {
+    String channelA = "prefix-a";
+    String channelB = findIdOnOtherLane(channelA);
+    final Map<String, List<String>> positions = new ConcurrentHashMap<String, List<String>>();
+    final Map<String, Set<String>> threads = new ConcurrentHashMap<String, Set<String>>();
+    for (String channel : Arrays.asList(channelA, channelB)) {
+      positions.put(channel, Collections.synchronizedList(new ArrayList<String>()));
+      threads.put(channel, Collections.synchronizedSet(new HashSet<String>()));
+    }
+
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.SIMPLE,
+        new SubscriptionAdapter() {
+          @Override
+          public void onSubscriptionData(SubscriptionData data) {
+            positions.get(data.getChannel()).add(data.getPosition());
+            threads.get(data.getChannel()).add(Thread.currentThread().getName());
+          }
+        })
+        .setPrefix(true)
+        .setPartitionByChannel(true);
+    SubscriptionListener listener = mService.getPubSub().dispatchListener("prefix", config);
+
+    for (int i = 0; i < 100; i++) {
+      listener.onSubscriptionData(data("prefix", channelA, String.valueOf(i)));
+      listener.onSubscriptionData(data("prefix", channelB, String.valueOf(i)));
+    }
+    mLanes.shutdown();
+    assertThat(mLanes.awaitTermination(10, TimeUnit.SECONDS), is(true));
+
+    for (String channel : Arrays.asList(channelA, channelB)) {
+      List<String> expected = new ArrayList<String>();
+      for (int i = 0; i < 100; i++) {
+        expected.add(String.valueOf(i));
+      }
+      assertThat(positions.get(channel), equalTo(expected));
+      assertThat(threads.get(channel).size(), equalTo(1));
+    }
+    assertThat(threads.get(channelA), not(equalTo(threads.get(channelB))));
+  }
+
+  @Test
+  public void conflatesDataWaitingBehindSlowListener() throws InterruptedException {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> positions = Collections.synchronizedList(new ArrayList<String>());
+
+    SubscriptionConfig config = new SubscriptionConfig(SubscriptionMode.SIMPLE,
+        new SubscriptionAdapter() {
+          @Override
+          public void onSubscriptionData(SubscriptionData data) {
+            entered.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException ignore) {
+              Thread.currentThread().interrupt();
+            }
+            positions.add(data.getPosition());
+          }
+
+          @Override
+          public void onLeaveSubscribed(SubscribeRequest request, SubscribeReply reply) {
+            positions.add("left");
+          }
+        })
+        .setConflation(true);
+    SubscriptionListener listener = mService.getPubSub().dispatchListener("ticks", config);
+
+    listener.onSubscriptionData(data("ticks", "1"));
+    assertThat(entered.await(10, TimeUnit.SECONDS), is(true));
+    listener.onSubscriptionData(data("ticks", "2"));
+    listener.onSubscriptionData(data("ticks", "3"));
+    listener.onLeaveSubscribed(null, null);
+    listener.onSubscriptionData(data("ticks", "4"));
+    listener.onSubscriptionData(data("ticks", "5"));
+    release.countDown();
+    mLanes.shutdown();
+    assertThat(mLanes.awaitTermination(10, TimeUnit.SECONDS), is(true));
+
+    assertThat(positions, contains("1", "3", "left", "5"));
+    assertThat(config.getConflatedCount(), equalTo(2L));
+  }
+
+  private String findIdOnOtherLane(String id) {
+    int lane = laneIndex(id);
+    for (int i = 0; ; i++) {
+      String candidate = "fast-" + i;
+      if (laneIndex(candidate) != lane) {
+        assertThat(mLanes.laneFor(candidate), not(mLanes.laneFor(id)));
+        return candidate;
+      }
+    }
+  }
+
+  private int laneIndex(String id) {
+    return (id.hashCode() & Integer.MAX_VALUE) % mLanes.size();
+  }
+
+  private static SubscriptionData data(String id, String position) {
+    return data(id, null, position);
+  }
+
+  private static SubscriptionData data(String id, String channel, String position) {
+    return new SubscriptionData(id, position, Collections.<AnyJson>emptyList(), channel);
+  }
+}
@@ -0,0 +1,214 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.satori.rtm.SubscriptionPublisher.OverflowStrategy;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionError;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SubscriptionPublisherTest {
+  private static final String CHANNEL = "channel";
+
+  private RtmClient mClient;
+
+  @Before
+  public void setUp() {
+    mClient = mock(RtmClient.class);
+  }
+
+  @Test
+  public void deliversOnlyRequestedItems() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onSubscriptionData(data("1"));
+    listener.onSubscriptionData(data("2"));
+    listener.onSubscriptionData(data("3"));
+    assertThat(subscriber.positions, is(empty()));
+
+    subscriber.subscription.request(2);
+    assertThat(subscriber.positions, contains("1", "2"));
+
+    subscriber.subscription.request(5);
+    listener.onSubscriptionData(data("4"));
+    assertThat(subscriber.positions, contains("1", "2", "3", "4"));
+    assertThat(subscriber.error, is(nullValue()));
+  }
+
+  @Test
+  public void dropsOldestItemsWhenBufferIsFull() {
+    SubscriptionPublisher publisher = createPublisher(2, OverflowStrategy.DROP_OLDEST);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onSubscriptionData(data("1"));
+    listener.onSubscriptionData(data("2"));
+    listener.onSubscriptionData(data("3"));
+    subscriber.subscription.request(Long.MAX_VALUE);
+
+    assertThat(subscriber.positions, contains("2", "3"));
+    assertThat(publisher.getDroppedCount(), equalTo(1L));
+  }
+
+  @Test
+  public void dropsLatestItemsWhenBufferIsFull() {
+    SubscriptionPublisher publisher = createPublisher(2, OverflowStrategy.DROP_LATEST);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onSubscriptionData(data("1"));
+    listener.onSubscriptionData(data("2"));
+    listener.onSubscriptionData(data("3"));
+    subscriber.subscription.request(Long.MAX_VALUE);
+
+    assertThat(subscriber.positions, contains("1", "2"));
+    assertThat(publisher.getDroppedCount(), equalTo(1L));
+  }
+
+  @Test
+  public void signalsErrorAndUnsubscribesOnOverflow() {
+    SubscriptionPublisher publisher = createPublisher(1, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onSubscriptionData(data("1"));
+    listener.onSubscriptionData(data("2"));
+
+    assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+    verify(mClient).removeSubscription(CHANNEL);
+  }
+
+  @Test
+  public void cancelRemovesSubscription() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    subscriber.subscription.cancel();
+    listener.onSubscriptionData(data("1"));
+    subscriber.subscription.request(1);
+
+    verify(mClient).removeSubscription(CHANNEL);
+    assertThat(subscriber.positions, is(empty()));
+  }
+
+  @Test
+  public void signalsErrorAndUnsubscribesOnSubscriptionError() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onSubscriptionData(data("1"));
+    listener.onSubscriptionError(new SubscriptionError(CHANNEL, "out_of_sync", "Too slow"));
+
+    assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+    verify(mClient).removeSubscription(CHANNEL);
+  }
+
+  @Test
+  public void signalsErrorAndUnsubscribesWhenSubscribeFails() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    SubscriptionListener listener = capturedListener();
+
+    listener.onEnterFailed();
+    subscriber.subscription.request(1);
+
+    assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+    assertThat(subscriber.positions, is(empty()));
+    verify(mClient).removeSubscription(CHANNEL);
+  }
+
+  @Test
+  public void rejectsNonPositiveRequest() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(0);
+
+    assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    verify(mClient).removeSubscription(CHANNEL);
+  }
+
+  @Test
+  public void rejectsSecondSubscriber() {
+    SubscriptionPublisher publisher = createPublisher(10, OverflowStrategy.ERROR);
+    publisher.subscribe(new RecordingSubscriber());
+    RecordingSubscriber second = new RecordingSubscriber();
+    publisher.subscribe(second);
+
+    assertThat(second.error, instanceOf(IllegalStateException.class));
+    verify(mClient, never()).removeSubscription(CHANNEL);
+  }
+
+  private SubscriptionPublisher createPublisher(int bufferSize, OverflowStrategy strategy) {
+    return new SubscriptionPublisher(mClient, CHANNEL, SubscriptionMode.SIMPLE, bufferSize,
+        strategy);
+  }
+
+  private SubscriptionListener capturedListener() {
+    ArgumentCaptor<SubscriptionConfig> captor = ArgumentCaptor.forClass(SubscriptionConfig.class);
+    verify(mClient).createSubscription(eq(CHANNEL), captor.capture());
+    return captor.getValue().getUserListener();
+  }
+
+  private static SubscriptionData data(String position) {
+    return new SubscriptionData(CHANNEL, position, Collections.<AnyJson>emptyList(), null);
+  }
+
+  private static class RecordingSubscriber implements Subscriber<SubscriptionData> {
+    final List<String> positions = new ArrayList<String>();
+    Subscription subscription;
+    Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      subscription = s;
+    }
+
+    @Override
+    public void onNext(SubscriptionData data) {
+      positions.add(data.getPosition());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.satori.rtm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.satori.rtm.connection.Connection;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.Pdu;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.model.SubscribeReply;
+import com.satori.rtm.model.SubscribeRequest;
+import com.satori.rtm.model.SubscriptionData;
+import com.satori.rtm.model.SubscriptionInfo;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class SubscriptionStatsTest {
+  private RtmService mService;
+  private SubscriptionConfig mConfig;
+
+  @Before
+  public void setUp() {
+    mService = RtmService.create(0, new TrampolineExecutorService());
+    mConfig = new SubscriptionConfig(SubscriptionMode.SIMPLE, new SubscriptionAdapter());
+    mService.getPubSub().createSubscription("channel", mConfig);
+  }
+
+  @Test
+  public void countsFastForwardsAndMissedMessages() {
+    SubscriptionInfo info = mock(SubscriptionInfo.class);
+    when(info.getSubscriptionId()).thenReturn("channel");
+    when(info.getInfo()).thenReturn("fast_forward");
+    when(info.getMissedMessageCount()).thenReturn(7);
+
+    deliver("rtm/subscription/info", info);
+    deliver("rtm/subscription/info", info);
+
+    SubscriptionStats stats = mService.getPubSub().getSubscriptionStats("channel");
+    assertThat(stats.getFastForwardCount(), equalTo(2L));
+    assertThat(stats.getMissedMessageCount(), equalTo(14L));
+  }
+
+  @Test
+  public void countsPositionDiscontinuities() {
+    mConfig.setDiscontinuityTracking(true);
+    deliver("rtm/subscription/data", data("100:1"));
+    deliver("rtm/subscription/data", data("100:2"));
+    deliver("rtm/subscription/data", data("200:0"));
+
+    SubscriptionStats stats = mService.getPubSub().getSubscriptionStats("channel");
+    assertThat(stats.getDiscontinuityCount(), equalTo(1L));
+  }
+
+  @Test
+  public void ignoresPositionsUnlessTracked() {
+    deliver("rtm/subscription/data", data("100:1"));
+    deliver("rtm/subscription/data", data("200:0"));
+
+    SubscriptionStats stats = mService.getPubSub().getSubscriptionStats("channel");
+    assertThat(stats.getDiscontinuityCount(), equalTo(0L));
+  }
+
+  @Test
+  public void countsResubscribes() {
+    Connection connection = mock(Connection.class);
+    when(connection.send(eq("rtm/subscribe"), any(SubscribeRequest.class),
+        eq(SubscribeReply.class))).thenReturn(Futures.immediateFuture(
+            new Pdu<SubscribeReply>("rtm/subscribe/ok", new SubscribeReply("channel", "1:0"))));
+
+    mService.onConnected(connection);
+    assertThat(mService.getPubSub().getSubscriptionStats("channel").getResubscribeCount(),
+        equalTo(0L));
+    mService.onDisconnected();
+    mService.onConnected(connection);
+    mService.onDisconnected();
+    mService.onConnected(connection);
+
+    assertThat(mService.getPubSub().getSubscriptionStats("channel").getResubscribeCount(),
+        equalTo(2L));
+  }
+
+  @Test
+  public void listsStatsOfAllSubscriptions() {
+    assertThat(mService.getPubSub().getSubscriptionStats(), hasKey("channel"));
+    assertThat(mService.getPubSub().getSubscriptionStats("unknown"), nullValue());
+  }
+
+  private void deliver(String action, final Object body) {
+    mService.getPubSub().onUnsolicitedPDU(new PduRaw(action, new AnyJson() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <F> F convertToType(Class<F> clazz) {
+        return (F) body;
+      }
+    }));
+  }
+
+  private static SubscriptionData data(String position) {
+    return new SubscriptionData("channel", position, Collections.<AnyJson>emptyList(), null);
+  }
+}
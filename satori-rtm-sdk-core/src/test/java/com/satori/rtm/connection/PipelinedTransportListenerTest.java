@@ -0,0 +1,136 @@
+package com.satori.rtm.connection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import com.satori.rtm.model.InvalidJsonException;
+import com.satori.rtm.model.PduRaw;
+import com.satori.rtm.utils.TrampolineExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class PipelinedTransportListenerTest {
+  private ExecutorService mParsers;
+  private ExecutorService mDispatcher;
+
+  @Before
+  public void setUp() {
+    mParsers = Executors.newFixedThreadPool(4);
+    mDispatcher = new TrampolineExecutorService();
+  }
+
+  @After
+  public void tearDown() {
+    mParsers.shutdownNow();
+    mDispatcher.shutdown();
+  }
+
+  @Test
+  public void deliversEventsInReceiveOrder() throws InterruptedException {
+    final int messages = 2000;
+    RecordingListener listener = new RecordingListener(messages + 3);
+    // the buffer is smaller than the number of messages to exercise the back pressure
+    PipelinedTransportListener pipeline = new PipelinedTransportListener(
+        listener, new SlowSerializer(), mParsers, mDispatcher, 16);
+
+    pipeline.onConnected();
+    for (int i = 0; i < messages; i++) {
+      pipeline.onMessage(String.valueOf(i));
+    }
+    pipeline.onMessage("invalid");
+    pipeline.onDisconnected();
+
+    assertThat(listener.done.await(30, TimeUnit.SECONDS), is(true));
+    List<String> expected = new ArrayList<String>();
+    expected.add("connected");
+    for (int i = 0; i < messages; i++) {
+      expected.add(String.valueOf(i));
+    }
+    expected.add("error");
+    expected.add("disconnected");
+    assertThat(listener.events, equalTo(expected));
+  }
+
+  private static class SlowSerializer implements Serializer {
+    private final Random mRandom = new Random();
+
+    @Override
+    public String toJson(Object obj) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PduRaw parsePdu(String json) throws InvalidJsonException {
+      if ("invalid".equals(json)) {
+        throw new InvalidJsonException("invalid", null);
+      }
+      // parsing of some messages is slower, so they complete out of order
+      if (0 == mRandom.nextInt(8)) {
+        Thread.yield();
+      }
+      return new PduRaw(json, null);
+    }
+  }
+
+  private static class RecordingListener implements PipelinedTransportListener.PduListener {
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done;
+
+    RecordingListener(int expectedEvents) {
+      this.done = new CountDownLatch(expectedEvents);
+    }
+
+    private void record(String event) {
+      events.add(event);
+      done.countDown();
+    }
+
+    @Override
+    public void onPdu(PduRaw pdu) {
+      record(pdu.getAction());
+    }
+
+    @Override
+    public void onParseError(Exception ex) {
+      record("error");
+    }
+
+    @Override
+    public void onConnected() {
+      record("connected");
+    }
+
+    @Override
+    public void onDisconnected() {
+      record("disconnected");
+    }
+
+    @Override
+    public void onMessage(String message) {
+      record("unparsed");
+    }
+
+    @Override
+    public void onTransportError(Exception ex) {
+      record("transport error");
+    }
+
+    @Override
+    public void onConnectingError(Exception ex) {
+      record("connecting error");
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.satori.rtm.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class MappedFileCheckpointStoreTest {
+  private static final int SLOT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  private ScheduledExecutorService mScheduler;
+  private File mFile;
+
+  @Before
+  public void setUp() throws IOException {
+    mScheduler = mock(ScheduledExecutorService.class);
+    doReturn(mock(ScheduledFuture.class)).when(mScheduler).scheduleWithFixedDelay(
+        any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    mFile = new File(mFolder.getRoot(), "checkpoints.dat");
+  }
+
+  @Test
+  public void restoresFlushedPositions() throws IOException {
+    MappedFileCheckpointStore store = open();
+    store.save("a", "100:1");
+    store.save("b", "100:2");
+    store.save("a", "100:3");
+    store.remove("b");
+    store.close();
+
+    MappedFileCheckpointStore reopened = open();
+    assertThat(reopened.load("a"), equalTo("100:3"));
+    assertThat(reopened.load("b"), nullValue());
+    reopened.close();
+  }
+
+  @Test
+  public void keepsPreviousSnapshotIfLatestIsCorrupted() throws IOException {
+    MappedFileCheckpointStore store = open();
+    store.save("a", "100:1");
+    store.flush();
+    store.save("a", "100:2");
+    store.close();
+
+    // the second snapshot is in the second slot, break its payload
+    RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+    file.seek(SLOT_SIZE + 20);
+    file.write(0xff);
+    file.close();
+
+    MappedFileCheckpointStore reopened = open();
+    assertThat(reopened.load("a"), equalTo("100:1"));
+    reopened.close();
+  }
+
+  @Test
+  public void unchangedPositionsAreNotWrittenAgain() throws IOException {
+    MappedFileCheckpointStore store = open();
+    store.save("a", "100:1");
+    store.flush();
+    store.save("a", "100:1");
+    store.flush();
+    store.close();
+
+    // only the first slot is written
+    RandomAccessFile file = new RandomAccessFile(mFile, "r");
+    file.seek(SLOT_SIZE);
+    assertThat(file.readInt(), equalTo(0));
+    file.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void failsIfSnapshotDoesNotFit() throws IOException {
+    MappedFileCheckpointStore store = open();
+    for (int i = 0; i < 1000; i++) {
+      store.save("subscription-" + i, "100:" + i);
+    }
+    store.flush();
+  }
+
+  private MappedFileCheckpointStore open() throws IOException {
+    return new MappedFileCheckpointStore(mFile, mScheduler, 1000, SLOT_SIZE);
+  }
+}
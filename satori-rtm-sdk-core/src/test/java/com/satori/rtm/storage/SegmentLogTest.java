@@ -0,0 +1,157 @@
+package com.satori.rtm.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class SegmentLogTest {
+  private static final int SEGMENT_SIZE = 64;
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Test
+  public void readsRecordsInOrder() throws IOException {
+    SegmentLog log = open(1024);
+    log.append(bytes("a"));
+    log.append(bytes("b"));
+
+    assertThat(string(log.next()), equalTo("a"));
+    assertThat(string(log.next()), equalTo("b"));
+    assertThat(log.next(), nullValue());
+    assertThat(log.size(), equalTo(2));
+
+    log.commit();
+    log.commit();
+    assertThat(log.isEmpty(), is(true));
+    log.close();
+  }
+
+  @Test
+  public void rewindReturnsUncommittedRecords() throws IOException {
+    SegmentLog log = open(1024);
+    log.append(bytes("a"));
+    log.append(bytes("b"));
+    log.next();
+    log.commit();
+    log.next();
+
+    log.rewind();
+    assertThat(string(log.next()), equalTo("b"));
+    assertThat(log.next(), nullValue());
+    log.close();
+  }
+
+  @Test
+  public void recoversUncommittedRecords() throws IOException {
+    SegmentLog log = open(1024);
+    for (int i = 0; i < 10; i++) {
+      log.append(bytes("record-" + i));
+    }
+    for (int i = 0; i < 4; i++) {
+      log.next();
+      log.commit();
+    }
+    log.close();
+
+    SegmentLog reopened = open(1024);
+    assertThat(reopened.size(), equalTo(6));
+    for (int i = 4; i < 10; i++) {
+      assertThat(string(reopened.next()), equalTo("record-" + i));
+    }
+    assertThat(reopened.next(), nullValue());
+    reopened.append(bytes("record-10"));
+    assertThat(string(reopened.next()), equalTo("record-10"));
+    reopened.close();
+  }
+
+  @Test
+  public void deletesCommittedSegments() throws IOException {
+    SegmentLog log = open(1024);
+    for (int i = 0; i < 10; i++) {
+      log.append(bytes("record-" + i));
+    }
+    assertThat(segmentCount() > 1, is(true));
+
+    for (int i = 0; i < 10; i++) {
+      log.next();
+      log.commit();
+    }
+    assertThat(segmentCount(), equalTo(1));
+    log.close();
+  }
+
+  @Test
+  public void skipsCommittedSegmentThatWasNotDeleted() throws IOException {
+    SegmentLog log = open(1024);
+    for (int i = 0; i < 10; i++) {
+      log.append(bytes("record-" + i));
+    }
+    log.next();
+    log.commit();
+    File first = new File(mFolder.getRoot(), String.format("%019d.seg", 0));
+    byte[] stale = Files.toByteArray(first);
+    for (int i = 1; i < 6; i++) {
+      log.next();
+      log.commit();
+    }
+    log.close();
+    assertThat(first.exists(), is(false));
+    // the first segment comes back as if its deletion had failed
+    Files.write(stale, first);
+
+    SegmentLog reopened = open(1024);
+    assertThat(reopened.size(), equalTo(4));
+    assertThat(string(reopened.next()), equalTo("record-6"));
+    assertThat(first.exists(), is(false));
+    reopened.close();
+  }
+
+  @Test
+  public void rejectsRecordsOverLimit() throws IOException {
+    SegmentLog log = open(40);
+    log.append(bytes("record-0"));
+    log.append(bytes("record-1"));
+    try {
+      log.append(bytes("record-2"));
+      throw new AssertionError("The log accepted a record over the limit");
+    } catch (IOException ignored) {
+      // expected
+    }
+
+    log.next();
+    log.commit();
+    log.append(bytes("record-2"));
+    assertThat(log.size(), equalTo(2));
+    log.close();
+  }
+
+  private SegmentLog open(long maxBytes) throws IOException {
+    return new SegmentLog(mFolder.getRoot(), SEGMENT_SIZE, maxBytes);
+  }
+
+  private int segmentCount() {
+    File[] files = mFolder.getRoot().listFiles();
+    return null == files ? 0 : files.length;
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(Charsets.UTF_8);
+  }
+
+  private static String string(byte[] value) {
+    return new String(value, Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,81 @@
+package com.satori.rtm.transport;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(JUnit4.class)
+public class DispatchingTransportListenerTest {
+  private TransportListener mListener;
+  private QueueExecutor mDispatcher;
+  private DispatchingTransportListener mDispatching;
+
+  @Before
+  public void setUp() {
+    mListener = mock(TransportListener.class);
+    mDispatcher = new QueueExecutor();
+    mDispatching = new DispatchingTransportListener(mListener, mDispatcher);
+  }
+
+  @Test
+  public void forwardsEventsOnDispatcher() {
+    Exception transportError = new Exception("transport");
+    Exception connectingError = new Exception("connecting");
+    mDispatching.onConnected();
+    mDispatching.onMessage("message");
+    mDispatching.onTransportError(transportError);
+    mDispatching.onDisconnected();
+    mDispatching.onConnectingError(connectingError);
+
+    // nothing reaches the listener until the dispatcher runs the tasks
+    verifyNoMoreInteractions(mListener);
+    mDispatcher.runAll();
+
+    InOrder order = inOrder(mListener);
+    order.verify(mListener).onConnected();
+    order.verify(mListener).onMessage("message");
+    order.verify(mListener).onTransportError(transportError);
+    order.verify(mListener).onDisconnected();
+    order.verify(mListener).onConnectingError(connectingError);
+    order.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void failedListenerDoesNotStopDispatching() {
+    doThrow(new RuntimeException("failed listener")).when(mListener).onMessage("first");
+    mDispatching.onMessage("first");
+    mDispatching.onMessage("second");
+
+    mDispatcher.runAll();
+
+    InOrder order = inOrder(mListener);
+    order.verify(mListener).onMessage("first");
+    order.verify(mListener).onMessage("second");
+  }
+
+  private static class QueueExecutor implements Executor {
+    private final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+      mTasks.add(command);
+    }
+
+    void runAll() {
+      for (Runnable task : mTasks) {
+        task.run();
+      }
+      mTasks.clear();
+    }
+  }
+}
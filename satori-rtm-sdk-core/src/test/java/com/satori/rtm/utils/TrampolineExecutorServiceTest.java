@@ -0,0 +1,151 @@
+package com.satori.rtm.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(JUnit4.class)
+public class TrampolineExecutorServiceTest {
+  private TrampolineExecutorService mExecutor;
+
+  @Before
+  public void setUp() {
+    mExecutor = new TrampolineExecutorService();
+  }
+
+  @Test
+  public void runsNestedTasksAfterCurrentTask() {
+    final List<String> events = new ArrayList<String>();
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        events.add("outer-start");
+        mExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            events.add("inner");
+          }
+        });
+        events.add("outer-end");
+      }
+    });
+    assertThat(events, contains("outer-start", "outer-end", "inner"));
+  }
+
+  @Test
+  public void keepsRunningAfterFailedTask() {
+    final List<String> events = new ArrayList<String>();
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        throw new RuntimeException("failed task");
+      }
+    });
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        events.add("next");
+      }
+    });
+    assertThat(events, contains("next"));
+  }
+
+  @Test
+  public void keepsRunningAfterTaskThrowsError() {
+    final List<String> events = new ArrayList<String>();
+    try {
+      mExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              events.add("nested");
+            }
+          });
+          throw new Error("failed task");
+        }
+      });
+      throw new AssertionError("The error must reach the draining thread");
+    } catch (Error err) {
+      assertThat(err.getMessage(), equalTo("failed task"));
+    }
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        events.add("next");
+      }
+    });
+    assertThat(events, contains("nested", "next"));
+  }
+
+  @Test
+  public void preservesPerProducerOrderUnderContention() throws InterruptedException {
+    final int producers = 4;
+    final int tasksPerProducer = 50000;
+    final int[] lastSeen = new int[producers];
+    final AtomicBoolean outOfOrder = new AtomicBoolean(false);
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      lastSeen[p] = -1;
+      final int producer = p;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < tasksPerProducer; i++) {
+              final int seq = i;
+              mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                  // tasks never run concurrently, so plain array access is safe here
+                  if (lastSeen[producer] + 1 != seq) {
+                    outOfOrder.set(true);
+                  }
+                  lastSeen[producer] = seq;
+                }
+              });
+            }
+          } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+    start.countDown();
+    assertThat(done.await(30, TimeUnit.SECONDS), is(true));
+    mExecutor.shutdown();
+    assertThat(mExecutor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+    assertThat(outOfOrder.get(), is(false));
+    for (int p = 0; p < producers; p++) {
+      assertThat(lastSeen[p], equalTo(tasksPerProducer - 1));
+    }
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void rejectsTasksAfterShutdown() {
+    mExecutor.shutdown();
+    assertThat(mExecutor.isTerminated(), is(true));
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() { }
+    });
+  }
+}
@@ -16,6 +16,7 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import com.satori.rtm.model.AnyJson;
 import com.satori.rtm.model.InvalidJsonException;
+import com.satori.rtm.model.JsonFieldReader;
 import com.satori.rtm.model.PduRaw;
 import com.satori.rtm.model.PublishRequest;
 import com.satori.rtm.model.WriteRequest;
@@ -64,7 +65,7 @@ public class GsonSerializer implements Serializer {
     return mGson.fromJson(json, PduRaw.class);
   }
 
-  private static class JsonElementWrapper implements AnyJson {
+  private static class JsonElementWrapper implements AnyJson, JsonFieldReader {
     private final JsonElement json;
     private final JsonDeserializationContext context;
 
@@ -85,6 +86,19 @@ public class GsonSerializer implements Serializer {
       return typedBody;
     }
 
+    @Override
+    public String readScalarField(String name) {
+      if (!json.isJsonObject()) {
+        return null;
+      }
+      JsonElement value = json.getAsJsonObject().get(name);
+      if (null == value || !value.isJsonPrimitive()) {
+        return null;
+      }
+      // parsed numbers keep their text, so large integers aren't rounded
+      return value.getAsString();
+    }
+
     @Override
     public String toString() {
       return json.toString();
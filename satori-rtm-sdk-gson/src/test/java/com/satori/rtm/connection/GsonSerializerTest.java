@@ -0,0 +1,43 @@
+package com.satori.rtm.connection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.satori.rtm.FieldKeyExtractor;
+import com.satori.rtm.model.AnyJson;
+import com.satori.rtm.model.SubscriptionData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GsonSerializerTest {
+  @Test
+  public void readsTopLevelFieldsOfMessage() throws Exception {
+    AnyJson message =
+        message("{\"type\":\"trade\",\"ok\":true,\"nested\":{\"a\":1},\"none\":null}");
+
+    assertThat(new FieldKeyExtractor("type").getKey(message), equalTo("trade"));
+    assertThat(new FieldKeyExtractor("ok").getKey(message), equalTo("true"));
+    assertThat(new FieldKeyExtractor("nested").getKey(message), nullValue());
+    assertThat(new FieldKeyExtractor("none").getKey(message), nullValue());
+    assertThat(new FieldKeyExtractor("missing").getKey(message), nullValue());
+    assertThat(new FieldKeyExtractor("type").getKey(message("\"text\"")), nullValue());
+  }
+
+  @Test
+  public void keepsLargeIntegerKeys() throws Exception {
+    // 2^53 + 1 isn't representable as a double
+    AnyJson message = message("{\"id\":9007199254740993}");
+    assertThat(new FieldKeyExtractor("id").getKey(message), equalTo("9007199254740993"));
+  }
+
+  private static AnyJson message(String json) throws Exception {
+    String pdu = "{\"action\":\"rtm/subscription/data\",\"body\":{\"subscription_id\":\"channel\","
+        + "\"position\":\"1:0\",\"messages\":[" + json + "]}}";
+    SubscriptionData data = new GsonSerializer().parsePdu(pdu)
+        .convertBodyTo(SubscriptionData.class).getBody();
+    return data.getMessages().iterator().next();
+  }
+}
@@ -16,6 +16,7 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.satori.rtm.model.AnyJson;
 import com.satori.rtm.model.InvalidJsonException;
+import com.satori.rtm.model.JsonFieldReader;
 import com.satori.rtm.model.PduRaw;
 import java.io.IOException;
 
@@ -88,7 +89,7 @@ public class JacksonSerializer implements Serializer {
     }
   }
 
-  static class JsonNodeWrapper implements AnyJson {
+  static class JsonNodeWrapper implements AnyJson, JsonFieldReader {
     private final JsonNode node;
     private final ObjectMapper mapper;
 
@@ -116,6 +117,16 @@ public class JacksonSerializer implements Serializer {
       return typedBody;
     }
 
+    @Override
+    public String readScalarField(String name) {
+      JsonNode value = node.isObject() ? node.get(name) : null;
+      if (null == value || !value.isValueNode() || value.isNull()) {
+        return null;
+      }
+      // integers are parsed into int, long or BigInteger nodes, so they aren't rounded
+      return value.asText();
+    }
+
     @Override
     public String toString() {
       return this.node.toString();